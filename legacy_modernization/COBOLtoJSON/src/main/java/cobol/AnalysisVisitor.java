@@ -0,0 +1,47 @@
+package cobol;
+
+import cobol.antlr.Cobol85BaseVisitor;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.RuleNode;
+
+import java.util.Collections;
+
+/**
+ * Base class for analyses that can share a single walk of the parse tree.
+ * Descent is owned by {@link FusedTreeWalker}: each visit method only does the work
+ * for its own node, so {@code visitChildren} is a no-op, and work that must happen
+ * after a node's children have been walked goes in {@link #exitNode}.
+ */
+public abstract class AnalysisVisitor extends Cobol85BaseVisitor<Void> {
+
+    /**
+     * Walks the whole tree with this analysis alone.
+     * @param tree The parse tree to analyze
+     * @return Always null
+     */
+    @Override
+    public Void visit(ParseTree tree) {
+        new FusedTreeWalker(Collections.<AnalysisVisitor>singletonList(this)).walk(tree);
+        return null;
+    }
+
+    @Override
+    public Void visitChildren(RuleNode node) {
+        return null;
+    }
+
+    /**
+     * Called by the walker before it walks each segment of a program.
+     * @param segment The segment about to be walked
+     */
+    public void enterSegment(ParseSegment segment) {
+    }
+
+    /**
+     * Called by the walker after all children of a node have been walked.
+     * @param ctx The node being left
+     */
+    public void exitNode(ParserRuleContext ctx) {
+    }
+}
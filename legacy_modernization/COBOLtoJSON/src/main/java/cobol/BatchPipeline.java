@@ -0,0 +1,179 @@
+package cobol;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch processing as a chain of stages, each with its own worker pool and bounded queue.
+ * I/O stages and CPU stages are sized separately, so a worker blocked on disk does not hold a
+ * CPU slot; on runtimes with virtual threads the I/O stages can run on them. A stage hands a
+ * finished job to the next stage's queue on the same worker, outside the stage's time limit;
+ * when that queue is full the worker waits, which propagates backpressure all the way to the
+ * producer. A job leaves the pipeline after the last stage or
+ * as soon as a stage reports it is done, and its errors are published then.
+ * <p>
+ * The time limit applies per file: the stages a file runs through share one budget, and each
+ * stage may only use what the earlier ones left. Time spent waiting in the queues is not charged.
+ */
+public class BatchPipeline {
+
+    /**
+     * One step of processing a file.
+     */
+    public interface Step {
+        /**
+         * Runs the step.
+         * @param job The file being processed
+         * @return true to pass the job to the next stage, false if it is finished
+         * @throws Exception If the step fails; the job is then finished with an error
+         */
+        boolean run(FileJob job) throws Exception;
+    }
+
+    /**
+     * A named step and whether it is I/O bound.
+     */
+    public static class Stage {
+        public final String name;
+        public final boolean io;
+        public final Step step;
+
+        public Stage(String name, boolean io, Step step) {
+            this.name = name;
+            this.io = io;
+            this.step = step;
+        }
+    }
+
+    private static final String SHUTDOWN = "cancelled by shutdown";
+
+    private final List<Stage> stages;
+    private final List<BoundedWorkQueue> queues = new ArrayList<>();
+    private final List<ParsingError> errors;
+    private final long timeoutMillis;
+
+    /**
+     * @param stages The stages in processing order
+     * @param ioThreads Workers per I/O stage
+     * @param virtualIo Whether I/O stages run on virtual threads; CPU stages always use platform threads
+     * @param cpuThreads Workers per CPU stage
+     * @param threadOverrides Per-stage worker counts by stage name, overriding the defaults
+     * @param capacity Queue capacity of each stage
+     * @param timeoutMillis Time limit per file across all stages; 0 for none
+     * @param errors List receiving the errors of finished jobs
+     */
+    public BatchPipeline(List<Stage> stages, int ioThreads, boolean virtualIo, int cpuThreads, Map<String, Integer> threadOverrides,
+                         int capacity, long timeoutMillis, List<ParsingError> errors) {
+        this.stages = new ArrayList<>(stages);
+        this.errors = errors;
+        this.timeoutMillis = timeoutMillis;
+        for (Stage stage : stages) {
+            int threads = threadOverrides.getOrDefault(stage.name, stage.io ? ioThreads : cpuThreads);
+            // No time limit of their own; each job is given what is left of its budget
+            queues.add(new BoundedWorkQueue(stage.name, Math.max(1, threads), capacity, 0, stage.io && virtualIo));
+        }
+    }
+
+    /**
+     * Feeds a file into the first stage, waiting while that stage is full.
+     * @param inputFile The file to process
+     * @return false if the pipeline has been stopped
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean submit(Path inputFile) throws InterruptedException {
+        return submit(0, new FileJob(inputFile));
+    }
+
+    private boolean submit(int index, FileJob job) throws InterruptedException {
+        long remainingMillis = 0;
+        if (timeoutMillis > 0) {
+            remainingMillis = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(job.stageNanos);
+            if (remainingMillis <= 0) {
+                cancel(job, timedOut(index));
+                return true;
+            }
+        }
+        boolean[] passOn = new boolean[1];
+        return queues.get(index).submit(
+                () -> passOn[0] = runStep(index, job),
+                () -> handOff(index, job, passOn[0]),
+                reason -> cancel(job, SHUTDOWN.equals(reason) ? reason : timedOut(index)),
+                remainingMillis);
+    }
+
+    private boolean runStep(int index, FileJob job) {
+        long start = System.nanoTime();
+        try {
+            return stages.get(index).step.run(job) && index + 1 < stages.size();
+        } catch (Exception e) {
+            job.fail(e);
+            return false;
+        } finally {
+            job.stageNanos += System.nanoTime() - start;
+        }
+    }
+
+    private String timedOut(int index) {
+        return "timed out after " + timeoutMillis + " ms, in the " + stages.get(index).name + " stage";
+    }
+
+    private void handOff(int index, FileJob job, boolean passOn) {
+        if (!passOn) {
+            errors.addAll(job.errors);
+            return;
+        }
+        try {
+            if (!submit(index + 1, job)) {
+                cancel(job, SHUTDOWN);
+            }
+        } catch (InterruptedException e) {
+            cancel(job, SHUTDOWN);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void cancel(FileJob job, String reason) {
+        errors.addAll(job.errors);
+        errors.add(new ParsingError(job.inputFile.toString(), "Processing " + reason, 0));
+    }
+
+    /**
+     * Waits until every submitted file has left the pipeline. Stages are drained in order,
+     * since a stage only receives work while the one before it is running.
+     * @throws InterruptedException If interrupted while waiting; the pipeline is then stopped
+     */
+    public void awaitCompletion() throws InterruptedException {
+        try {
+            for (BoundedWorkQueue queue : queues) {
+                queue.awaitCompletion();
+            }
+        } catch (InterruptedException e) {
+            stop();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops all stages; unfinished files are reported as cancelled.
+     */
+    public void stop() {
+        for (BoundedWorkQueue queue : queues) {
+            queue.stop();
+        }
+    }
+
+    /**
+     * Prints a line per stage with its workers, completed files, busy time, queue depth and throughput.
+     */
+    public void printStatistics() {
+        System.out.println("Pipeline stages:");
+        for (BoundedWorkQueue queue : queues) {
+            System.out.printf("  %-10s %3d workers  %6d files  busy %7d ms  queue avg %5.1f max %3d  %8.1f files/s%n",
+                    queue.getName(), queue.getWorkers(), queue.getCompleted(), queue.getBusyMillis(),
+                    queue.getAverageQueueDepth(), queue.getMaxQueueDepth(), queue.getThroughput());
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package cobol;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the binary output written by {@link BinaryOutputWriter}. Opening a file only reads the
+ * section headers; {@link #read(String)} then decodes just the requested section. Values are
+ * decoded into the same json-simple types {@code JSONParser} gives for the JSON file: objects,
+ * arrays, strings, {@code Long} integers, {@code Double} fractions, booleans and null.
+ * <p>
+ * Run with a file and optional section names to print them as JSON:
+ * {@code java -cp cobol-json-parser.jar cobol.BinaryOutputReader parsed_MAIN.cbor dataMovement}.
+ */
+public class BinaryOutputReader {
+    private final Path path;
+    private final ByteBuffer data;
+    private final Map<String, int[]> sections = new LinkedHashMap<>(); // name -> offset, length
+
+    /**
+     * Opens a binary output file and indexes its sections.
+     * @param path The file
+     * @throws IOException If the file cannot be read or is not binary output
+     */
+    public BinaryOutputReader(Path path) throws IOException {
+        this.path = path;
+        this.data = SourceFiles.map(path);
+        index();
+    }
+
+    /**
+     * Gets the names of the sections in the order they were written.
+     * @return The section names
+     */
+    public Set<String> getSections() {
+        return Collections.unmodifiableSet(sections.keySet());
+    }
+
+    /**
+     * Decodes one section.
+     * @param section Section name, such as {@code structuredStatements}
+     * @return The section value, or null if the file has no such section
+     * @throws IOException If the section is malformed
+     */
+    public Object read(String section) throws IOException {
+        ByteBuffer encoded = getEncoded(section);
+        return encoded == null ? null : readItem(encoded);
+    }
+
+    /**
+     * Gets the undecoded CBOR item of one section, for use with another CBOR decoder.
+     * @param section Section name
+     * @return A read-only buffer holding exactly the item, or null if the file has no such section
+     */
+    public ByteBuffer getEncoded(String section) {
+        int[] location = sections.get(section);
+        if (location == null) return null;
+        ByteBuffer slice = data.duplicate();
+        slice.position(location[0]).limit(location[0] + location[1]);
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Decodes every section into one object, equal to the parsed JSON file.
+     * @return The document
+     * @throws IOException If a section is malformed
+     */
+    public JSONObject readAll() throws IOException {
+        JSONObject document = new JSONObject();
+        for (String section : sections.keySet()) {
+            document.put(section, read(section));
+        }
+        return document;
+    }
+
+    private void index() throws IOException {
+        ByteBuffer in = data.duplicate();
+        if (in.remaining() >= 3 && (in.get(0) & 0xFF) == 0xD9 && (in.get(1) & 0xFF) == 0xD9 && (in.get(2) & 0xFF) == 0xF7) {
+            in.position(3);
+        }
+        int initial = next(in);
+        boolean indefinite = initial == 0xBF;
+        if (!indefinite && initial >>> 5 != 5) throw malformed("the document is not a map");
+        long count = indefinite ? -1 : argument(in, initial & 0x1F);
+        for (long i = 0; indefinite || i < count; i++) {
+            if (indefinite && in.hasRemaining() && (in.get(in.position()) & 0xFF) == 0xFF) break;
+            Object name = readItem(in);
+            int tag = next(in);
+            if (tag >>> 5 != 6 || argument(in, tag & 0x1F) != BinaryOutputWriter.ENCODED_CBOR_TAG) {
+                throw malformed("section " + name + " is not an embedded item");
+            }
+            int header = next(in);
+            if (header >>> 5 != 2) throw malformed("section " + name + " is not a byte string");
+            long length = argument(in, header & 0x1F);
+            if (length > in.remaining()) throw malformed("section " + name + " is truncated");
+            sections.put(String.valueOf(name), new int[] { in.position(), (int) length });
+            in.position(in.position() + (int) length);
+        }
+    }
+
+    private Object readItem(ByteBuffer in) throws IOException {
+        int initial = next(in);
+        int major = initial >>> 5;
+        int info = initial & 0x1F;
+        switch (major) {
+            case 0:
+                return argument(in, info);
+            case 1:
+                return -1 - argument(in, info);
+            case 2:
+                return bytes(in, info);
+            case 3:
+                return new String(bytes(in, info), StandardCharsets.UTF_8);
+            case 4: {
+                JSONArray array = new JSONArray();
+                if (info == 31) {
+                    while (!atBreak(in)) array.add(readItem(in));
+                } else {
+                    for (long i = argument(in, info); i > 0; i--) array.add(readItem(in));
+                }
+                return array;
+            }
+            case 5: {
+                JSONObject object = new JSONObject();
+                if (info == 31) {
+                    while (!atBreak(in)) object.put(String.valueOf(readItem(in)), readItem(in));
+                } else {
+                    for (long i = argument(in, info); i > 0; i--) object.put(String.valueOf(readItem(in)), readItem(in));
+                }
+                return object;
+            }
+            case 6: {
+                long tag = argument(in, info);
+                Object item = readItem(in);
+                if (tag == BinaryOutputWriter.ENCODED_CBOR_TAG && item instanceof byte[]) {
+                    return readItem(ByteBuffer.wrap((byte[]) item));
+                }
+                return item;
+            }
+            default:
+                switch (info) {
+                    case 20: return Boolean.FALSE;
+                    case 21: return Boolean.TRUE;
+                    case 22:
+                    case 23: return null;
+                    case 25: return (double) halfToFloat(in.getShort() & 0xFFFF);
+                    case 26: return (double) in.getFloat();
+                    case 27: return in.getDouble();
+                    default: throw malformed("unsupported simple value " + info);
+                }
+        }
+    }
+
+    /**
+     * Consumes the break that ends an indefinite-length item, if it is next.
+     */
+    private boolean atBreak(ByteBuffer in) throws IOException {
+        if (!in.hasRemaining()) throw malformed("unterminated item");
+        if ((in.get(in.position()) & 0xFF) != 0xFF) return false;
+        in.get();
+        return true;
+    }
+
+    private byte[] bytes(ByteBuffer in, int info) throws IOException {
+        if (info == 31) {
+            ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+            while (!atBreak(in)) {
+                int chunk = next(in);
+                byte[] part = bytes(in, chunk & 0x1F);
+                chunks.write(part, 0, part.length);
+            }
+            return chunks.toByteArray();
+        }
+        long length = argument(in, info);
+        if (length > in.remaining()) throw malformed("string is truncated");
+        byte[] result = new byte[(int) length];
+        in.get(result);
+        return result;
+    }
+
+    private long argument(ByteBuffer in, int info) throws IOException {
+        if (info < 24) return info;
+        switch (info) {
+            case 24: return in.get() & 0xFFL;
+            case 25: return in.getShort() & 0xFFFFL;
+            case 26: return in.getInt() & 0xFFFFFFFFL;
+            case 27: return in.getLong();
+            default: throw malformed("unsupported length encoding " + info);
+        }
+    }
+
+    private int next(ByteBuffer in) throws IOException {
+        if (!in.hasRemaining()) throw malformed("unexpected end of data");
+        return in.get() & 0xFF;
+    }
+
+    private static float halfToFloat(int half) {
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        float value = exponent == 0 ? mantissa * 0x1p-24f
+                : exponent == 31 ? (mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN)
+                : (1 + mantissa / 1024f) * (float) Math.pow(2, exponent - 15);
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+
+    private IOException malformed(String reason) {
+        return new IOException("Malformed binary output " + path + ": " + reason);
+    }
+
+    /**
+     * Prints sections of a binary output file as JSON.
+     * @param args The file, then the sections to print; all sections if none are given
+     * @throws IOException If the file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java cobol.BinaryOutputReader <file.cbor> [section...]");
+            System.exit(1);
+        }
+        BinaryOutputReader reader = new BinaryOutputReader(Paths.get(args[0]));
+        if (args.length == 1) {
+            System.out.println(reader.readAll().toJSONString());
+            return;
+        }
+        for (int i = 1; i < args.length; i++) {
+            System.out.println(JSONValue.toJSONString(reader.read(args[i])));
+        }
+    }
+}
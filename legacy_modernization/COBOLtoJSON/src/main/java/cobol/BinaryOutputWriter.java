@@ -0,0 +1,261 @@
+package cobol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a program's output document as CBOR (RFC 8949), the binary counterpart of the JSON file.
+ * The layout lets a reader jump to one section without decoding the others:
+ * <ul>
+ *   <li>The file starts with the self-describe tag 55799 ({@code D9 D9 F7}), followed by one
+ *       indefinite-length map ({@code BF ... FF}) that holds the sections in the order they were written.</li>
+ *   <li>Each key is the section name as a text string, such as {@code dataMovement}.</li>
+ *   <li>Each value is tag 24 ("encoded CBOR data item", {@code D8 18}) on a byte string. The length
+ *       of the byte string is always an 8-byte big-endian integer ({@code 5B} and 8 bytes), and the
+ *       string holds the section value encoded as one CBOR item.</li>
+ * </ul>
+ * Inside a section, JSON objects are maps with text keys, arrays are arrays, integers use major
+ * types 0 and 1, other numbers are 64-bit floats, and strings, booleans and null are the CBOR
+ * equivalents. Objects and arrays written member by member have indefinite length.
+ * The file is plain CBOR, so generic decoders can read it; {@link BinaryOutputReader} reads it
+ * section by section.
+ */
+public class BinaryOutputWriter implements DocumentWriter, Closeable {
+    static final int SELF_DESCRIBE_TAG = 55799;
+    static final int ENCODED_CBOR_TAG = 24;
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int MAJOR_TAG = 6;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long flushed; // bytes already written to the channel
+    private int depth;
+    private long sectionLengthAt = -1; // file offset of the length of the open section, or -1
+
+    private BinaryOutputWriter(FileChannel channel) throws IOException {
+        this.channel = channel;
+        head(MAJOR_TAG, SELF_DESCRIBE_TAG);
+    }
+
+    /**
+     * Opens a file for writing, replacing its contents.
+     * @param path The output file
+     * @return The writer
+     * @throws IOException If the file cannot be opened
+     */
+    public static BinaryOutputWriter open(Path path) throws IOException {
+        return new BinaryOutputWriter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    @Override
+    public BinaryOutputWriter beginObject() throws IOException {
+        put(0xBF);
+        depth++;
+        return this;
+    }
+
+    @Override
+    public BinaryOutputWriter endObject() throws IOException {
+        if (depth == 1) endSection();
+        put(0xFF);
+        depth--;
+        return this;
+    }
+
+    @Override
+    public BinaryOutputWriter beginArray() throws IOException {
+        put(0x9F);
+        depth++;
+        return this;
+    }
+
+    @Override
+    public BinaryOutputWriter endArray() throws IOException {
+        put(0xFF);
+        depth--;
+        return this;
+    }
+
+    /**
+     * Writes a member name; at the top level it also starts a new section.
+     */
+    @Override
+    public BinaryOutputWriter name(String name) throws IOException {
+        if (depth == 1) {
+            endSection();
+            text(name);
+            head(MAJOR_TAG, ENCODED_CBOR_TAG);
+            put(MAJOR_BYTES << 5 | 27);
+            sectionLengthAt = position();
+            ensure(8);
+            buffer.putLong(0); // patched by endSection
+        } else {
+            text(name);
+        }
+        return this;
+    }
+
+    @Override
+    public BinaryOutputWriter value(Object value) throws IOException {
+        if (value == null) {
+            put(0xF6);
+        } else if (value instanceof String) {
+            text((String) value);
+        } else if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isInfinite(d) || Double.isNaN(d)) {
+                put(0xF6); // as in the JSON output
+            } else {
+                put(0xFB);
+                ensure(8);
+                buffer.putDouble(d);
+            }
+        } else if (value instanceof Number) {
+            value(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            put((Boolean) value ? 0xF5 : 0xF4);
+        } else if (value instanceof JsonWritable) {
+            ((JsonWritable) value).writeJson(this);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            head(MAJOR_MAP, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                text(String.valueOf(entry.getKey()));
+                value(entry.getValue());
+            }
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            head(MAJOR_ARRAY, list.size());
+            for (Object element : list) {
+                value(element);
+            }
+        } else {
+            text(value.toString());
+        }
+        return this;
+    }
+
+    @Override
+    public BinaryOutputWriter value(long value) throws IOException {
+        if (value >= 0) {
+            head(MAJOR_UNSIGNED, value);
+        } else {
+            head(MAJOR_NEGATIVE, -1 - value);
+        }
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Fills in the length of the section being written, if any.
+     */
+    private void endSection() throws IOException {
+        if (sectionLengthAt < 0) return;
+        long length = position() - (sectionLengthAt + 8);
+        if (sectionLengthAt >= flushed) {
+            buffer.putLong((int) (sectionLengthAt - flushed), length);
+        } else {
+            flush();
+            ByteBuffer patch = ByteBuffer.allocate(8).putLong(0, length);
+            long at = sectionLengthAt;
+            while (patch.hasRemaining()) {
+                at += channel.write(patch, at);
+            }
+        }
+        sectionLengthAt = -1;
+    }
+
+    private void text(String s) throws IOException {
+        int length = s.length();
+        int i = 0;
+        while (i < length && s.charAt(i) < 0x80) i++;
+        if (i < length) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            head(MAJOR_TEXT, utf8.length);
+            bytes(utf8);
+            return;
+        }
+        head(MAJOR_TEXT, length);
+        for (int start = 0; start < length; ) {
+            ensure(1);
+            int end = Math.min(length, start + buffer.remaining());
+            for (int j = start; j < end; j++) {
+                buffer.put((byte) s.charAt(j));
+            }
+            start = end;
+        }
+    }
+
+    private void head(int major, long argument) throws IOException {
+        ensure(9);
+        int type = major << 5;
+        if (argument < 24) {
+            buffer.put((byte) (type | argument));
+        } else if (argument <= 0xFF) {
+            buffer.put((byte) (type | 24)).put((byte) argument);
+        } else if (argument <= 0xFFFF) {
+            buffer.put((byte) (type | 25)).putShort((short) argument);
+        } else if (argument <= 0xFFFFFFFFL) {
+            buffer.put((byte) (type | 26)).putInt((int) argument);
+        } else {
+            buffer.put((byte) (type | 27)).putLong(argument);
+        }
+    }
+
+    private void put(int b) throws IOException {
+        ensure(1);
+        buffer.put((byte) b);
+    }
+
+    private void bytes(byte[] data) throws IOException {
+        if (data.length > buffer.capacity()) {
+            flush();
+            ByteBuffer wrapped = ByteBuffer.wrap(data);
+            while (wrapped.hasRemaining()) {
+                flushed += channel.write(wrapped);
+            }
+            return;
+        }
+        ensure(data.length);
+        buffer.put(data);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    private long position() {
+        return flushed + buffer.position();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushed += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,303 @@
+package cobol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Fixed pool of workers fed through a bounded number of slots. {@link #submit} blocks while all
+ * slots are taken, so a producer walking a large tree never holds more than a few pending tasks.
+ * A task that exceeds the per-task timeout is interrupted; parsing notices this through
+ * {@link CancellableTokenStream}. {@link #stop()} cancels running and queued tasks so that the
+ * caller can still write out whatever was finished. The queue keeps simple statistics on its
+ * depth and throughput.
+ */
+public class BoundedWorkQueue {
+    private static final String SHUTDOWN = "cancelled by shutdown";
+
+    private final String name;
+    private final int workers;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final ScheduledExecutorService watchdog;
+    private final long timeoutMillis;
+    private final Set<RunningTask> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopped;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong firstStartNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastEndNanos = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong depthSum = new AtomicLong();
+    private final AtomicLong depthSamples = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    /**
+     * @param workers Number of worker threads
+     * @param capacity Number of tasks that may wait in addition to the running ones
+     * @param timeoutMillis Per-task time limit; 0 for none
+     */
+    public BoundedWorkQueue(int workers, int capacity, long timeoutMillis) {
+        this("worker", workers, capacity, timeoutMillis);
+    }
+
+    /**
+     * @param name Name used for the worker threads and in statistics
+     * @param workers Number of worker threads
+     * @param capacity Number of tasks that may wait in addition to the running ones
+     * @param timeoutMillis Per-task time limit; 0 for none
+     */
+    public BoundedWorkQueue(String name, int workers, int capacity, long timeoutMillis) {
+        this(name, workers, capacity, timeoutMillis, false);
+    }
+
+    /**
+     * @param name Name used for the worker threads and in statistics
+     * @param workers Number of worker threads
+     * @param capacity Number of tasks that may wait in addition to the running ones
+     * @param timeoutMillis Per-task time limit; 0 for none
+     * @param virtual Whether to run the workers on virtual threads where the runtime has them
+     */
+    public BoundedWorkQueue(String name, int workers, int capacity, long timeoutMillis, boolean virtual) {
+        this.name = name;
+        this.workers = workers;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                WorkerThreads.factory(name, virtual));
+        this.slots = new Semaphore(workers + Math.max(0, capacity));
+        this.timeoutMillis = timeoutMillis;
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submits a task, waiting for a free slot.
+     * @param task The work to run
+     * @param onCancel Receives the reason if the task is timed out or cancelled before it completes
+     * @return false if the queue has been stopped and the task was not accepted
+     * @throws InterruptedException If interrupted while waiting for a slot
+     */
+    public boolean submit(Runnable task, Consumer<String> onCancel) throws InterruptedException {
+        return submit(task, null, onCancel);
+    }
+
+    /**
+     * Submits a task with a continuation, waiting for a free slot. The continuation runs on the
+     * same worker once the task has completed without being cancelled. It is not subject to the
+     * time limit and still holds the slot, so a continuation that hands work to a full downstream
+     * queue passes the backpressure on to this queue's producer.
+     * @param task The work to run
+     * @param then Continuation to run after the task, or null
+     * @param onCancel Receives the reason if the task is timed out or cancelled before it completes
+     * @return false if the queue has been stopped and the task was not accepted
+     * @throws InterruptedException If interrupted while waiting for a slot
+     */
+    public boolean submit(Runnable task, Runnable then, Consumer<String> onCancel) throws InterruptedException {
+        return submit(task, then, onCancel, timeoutMillis);
+    }
+
+    /**
+     * Submits a task with a continuation and its own time limit, waiting for a free slot.
+     * @param task The work to run
+     * @param then Continuation to run after the task, or null
+     * @param onCancel Receives the reason if the task is timed out or cancelled before it completes
+     * @param taskTimeoutMillis Time limit of this task, replacing the queue's; 0 for none
+     * @return false if the queue has been stopped and the task was not accepted
+     * @throws InterruptedException If interrupted while waiting for a slot
+     */
+    public boolean submit(Runnable task, Runnable then, Consumer<String> onCancel, long taskTimeoutMillis) throws InterruptedException {
+        while (!slots.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+            if (stopped) return false;
+        }
+        if (stopped) {
+            slots.release();
+            return false;
+        }
+        try {
+            executor.execute(new QueuedTask(task, then, onCancel, taskTimeoutMillis));
+            int depth = executor.getQueue().size();
+            depthSum.addAndGet(depth);
+            depthSamples.incrementAndGet();
+            maxDepth.accumulateAndGet(depth, Math::max);
+            return true;
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            return false;
+        }
+    }
+
+    /**
+     * Gets the number of tasks waiting for a worker.
+     * @return Queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Accepts no more tasks and waits for the submitted ones to finish.
+     * @throws InterruptedException If interrupted while waiting; outstanding tasks are then stopped
+     */
+    public void awaitCompletion() throws InterruptedException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            stop();
+            throw e;
+        } finally {
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * Stops the queue: waiting tasks are dropped and running ones interrupted, each reporting
+     * the cancellation through its callback.
+     */
+    public void stop() {
+        stopped = true;
+        executor.shutdown();
+        List<Runnable> dropped = new ArrayList<>();
+        executor.getQueue().drainTo(dropped);
+        for (Runnable task : dropped) {
+            slots.release();
+            ((QueuedTask) task).onCancel.accept(SHUTDOWN);
+        }
+        for (RunningTask task : running) {
+            task.cancel(SHUTDOWN);
+        }
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Gets the number of tasks that ran to completion.
+     * @return Completed task count
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Gets the total time workers spent running tasks, excluding continuations.
+     * @return Busy time in milliseconds
+     */
+    public long getBusyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(busyNanos.get());
+    }
+
+    public int getMaxQueueDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * Gets the average number of waiting tasks seen at submission.
+     * @return Average queue depth
+     */
+    public double getAverageQueueDepth() {
+        long samples = depthSamples.get();
+        return samples == 0 ? 0 : (double) depthSum.get() / samples;
+    }
+
+    /**
+     * Gets the completed tasks per second between the first task start and the last task end.
+     * @return Throughput in tasks per second
+     */
+    public double getThroughput() {
+        long elapsed = lastEndNanos.get() - firstStartNanos.get();
+        return elapsed <= 0 ? 0 : completed.get() * 1e9 / elapsed;
+    }
+
+    private class QueuedTask implements Runnable {
+        private final Runnable task;
+        private final Runnable then;
+        private final Consumer<String> onCancel;
+        private final long timeoutMillis;
+
+        QueuedTask(Runnable task, Runnable then, Consumer<String> onCancel, long timeoutMillis) {
+            this.task = task;
+            this.then = then;
+            this.onCancel = onCancel;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (stopped) {
+                    onCancel.accept(SHUTDOWN);
+                    return;
+                }
+                RunningTask current = new RunningTask(Thread.currentThread());
+                running.add(current);
+                ScheduledFuture<?> timer = timeoutMillis > 0
+                        ? watchdog.schedule(() -> current.cancel("timed out after " + timeoutMillis + " ms"), timeoutMillis, TimeUnit.MILLISECONDS)
+                        : null;
+                long start = System.nanoTime();
+                firstStartNanos.accumulateAndGet(start, Math::min);
+                String reason;
+                try {
+                    task.run();
+                } finally {
+                    if (timer != null) timer.cancel(false);
+                    reason = current.finish();
+                    running.remove(current);
+                    Thread.interrupted(); // a late cancel must not leak into the worker's next task
+                    long end = System.nanoTime();
+                    busyNanos.addAndGet(end - start);
+                    lastEndNanos.accumulateAndGet(end, Math::max);
+                }
+                if (reason != null) {
+                    onCancel.accept(reason);
+                } else {
+                    completed.incrementAndGet();
+                    if (then != null) then.run();
+                }
+            } finally {
+                slots.release();
+            }
+        }
+    }
+
+    /**
+     * A task on a worker thread. Cancelling and finishing are mutually exclusive, so an
+     * interrupt is never delivered after the task has completed.
+     */
+    private static class RunningTask {
+        private final Thread thread;
+        private String reason;
+        private boolean done;
+
+        RunningTask(Thread thread) {
+            this.thread = thread;
+        }
+
+        synchronized void cancel(String why) {
+            if (!done && reason == null) {
+                reason = why;
+                thread.interrupt();
+            }
+        }
+
+        synchronized String finish() {
+            done = true;
+            return reason;
+        }
+    }
+}
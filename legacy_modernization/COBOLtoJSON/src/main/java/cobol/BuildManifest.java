@@ -0,0 +1,225 @@
+package cobol;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Manifest of an incremental batch run, kept in the output folder. For every program it records
+ * the source hash, the copybooks it included with their resolved paths and content hashes, the
+ * outputs it produced and the errors reported for it, together with a hash of the configuration.
+ * A program whose source, copybooks and configuration are unchanged is skipped on the next run.
+ * Programs a run does not get to, because it covers other files or is interrupted, keep their
+ * entries and outputs; an output is only deleted when its program was processed again without
+ * producing it, or when its source no longer exists under the input root.
+ */
+public class BuildManifest {
+    public static final String FILE_NAME = "build_manifest.json";
+
+    private final Path outputDir;
+    private final Path inputRoot;
+    private final String configHash;
+    private final CopybookResolver resolver;
+    private final CopybookHashes copybookHashes;
+    private final Map<String, JSONObject> previous = new HashMap<>();
+    private final Map<String, JSONObject> current = new ConcurrentHashMap<>();
+    private final Map<String, JSONObject> earlier = new HashMap<>(); // all previous entries, whatever the configuration
+    private final Set<String> processed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger reused = new AtomicInteger();
+
+    private BuildManifest(Path outputDir, Path inputRoot, String configHash, CopybookResolver resolver, CopybookHashes copybookHashes) {
+        this.outputDir = outputDir;
+        this.inputRoot = inputRoot;
+        this.configHash = configHash;
+        this.resolver = resolver;
+        this.copybookHashes = copybookHashes;
+    }
+
+    /**
+     * Loads the manifest of the previous run from the output folder, if there is one.
+     * Entries written under a different configuration are not reused, but their outputs are still tracked.
+     * @param outputDir Output folder holding the manifest
+     * @param inputRoot Input file or folder; program keys are relative to it
+     * @param configHash Hash of the configuration of this run
+     * @param resolver Copybook resolver of this run
+     * @param copybookHashes Copybook hashes of this run
+     * @return The manifest
+     */
+    public static BuildManifest load(Path outputDir, Path inputRoot, String configHash, CopybookResolver resolver, CopybookHashes copybookHashes) {
+        BuildManifest manifest = new BuildManifest(outputDir, Files.isDirectory(inputRoot) ? inputRoot : inputRoot.getParent(),
+                configHash, resolver, copybookHashes);
+        Path manifestPath = outputDir.resolve(FILE_NAME);
+        if (!Files.exists(manifestPath)) return manifest;
+
+        try {
+            String content = new String(Files.readAllBytes(manifestPath), StandardCharsets.UTF_8);
+            JSONObject json = (JSONObject) new JSONParser().parse(content);
+            boolean sameConfig = configHash.equals(json.get("configHash"));
+            JSONObject programs = (JSONObject) json.get("programs");
+            for (Object key : programs.keySet()) {
+                JSONObject entry = (JSONObject) programs.get(key);
+                manifest.earlier.put((String) key, entry);
+                if (sameConfig) {
+                    manifest.previous.put((String) key, entry);
+                }
+            }
+        } catch (IOException | ParseException | RuntimeException e) {
+            System.err.println("Ignoring unreadable build manifest: " + e.getMessage());
+        }
+        return manifest;
+    }
+
+    /**
+     * Gets the manifest key of a program.
+     * @param inputFile The program source
+     * @return Source path relative to the input root
+     */
+    public String keyOf(Path inputFile) {
+        Path relative = inputRoot == null ? inputFile : inputRoot.relativize(inputFile);
+        return relative.toString().replace('\\', '/');
+    }
+
+    private Path sourceOf(String key) {
+        return inputRoot == null ? Paths.get(key) : inputRoot.resolve(key);
+    }
+
+    /**
+     * Carries a program over from the previous run if nothing it depends on changed.
+     * @param inputFile The program source
+     * @param sourceHash Hash of the current source
+     * @param errors List receiving the errors recorded for the program last time
+     * @return true if the program is up to date and its outputs can be kept
+     */
+    public boolean reuse(Path inputFile, String sourceHash, List<ParsingError> errors) {
+        String key = keyOf(inputFile);
+        JSONObject entry = previous.get(key);
+        if (entry == null || !sourceHash.equals(entry.get("sourceHash"))) return false;
+
+        Map<String, String[]> resolutions = new LinkedHashMap<>();
+        JSONObject copybooks = (JSONObject) entry.get("copybooks");
+        for (Object name : copybooks.keySet()) {
+            JSONObject copybook = (JSONObject) copybooks.get(name);
+            resolutions.put((String) name, new String[] {(String) copybook.get("path"), (String) copybook.get("hash")});
+        }
+        if (!copybookHashes.unchanged(resolutions, resolver)) return false;
+        for (Object output : (JSONArray) entry.get("outputs")) {
+            if (!Files.exists(outputDir.resolve((String) output))) return false;
+        }
+
+        for (Object error : (JSONArray) entry.get("errors")) {
+            errors.add(ParsingError.fromJson((JSONObject) error));
+        }
+        current.put(key, entry);
+        reused.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Records a program that was processed in this run. The copybook dependencies come from the
+     * COPY resolutions of the preprocessing result, whether it was expanded or loaded from the preprocess cache.
+     * @param inputFile The program source
+     * @param sourceHash Hash of the source
+     * @param preprocessing Preprocessing result holding the COPY resolutions
+     * @param outputs Files written to the output folder
+     * @param errors Errors reported for the program
+     */
+    public void record(Path inputFile, String sourceHash, PreprocessingContext preprocessing, List<Path> outputs, List<ParsingError> errors) {
+        processed.add(keyOf(inputFile));
+        if (!preprocessing.isCacheable()) return; // retried next run
+        if (preprocessing.getCopyResolutions().isEmpty() && !preprocessing.getVisitedCopybooks().isEmpty()) {
+            return; // dependencies unknown, so copybook edits could not be detected; retried next run
+        }
+        JSONObject copybooks = new JSONObject();
+        for (Map.Entry<String, Path> resolution : preprocessing.getCopyResolutions().entrySet()) {
+            Path resolved = resolution.getValue();
+            JSONObject copybook = new JSONObject();
+            try {
+                copybook.put("path", resolved == null ? "" : resolved.toString());
+                copybook.put("hash", resolved == null ? "" : copybookHashes.get(resolved));
+            } catch (IOException e) {
+                // An unreadable copybook keeps the program out of the manifest, so it is retried next run
+                return;
+            }
+            copybooks.put(resolution.getKey(), copybook);
+        }
+        JSONArray outputNames = new JSONArray();
+        for (Path output : outputs) {
+            outputNames.add(outputDir.relativize(output).toString());
+        }
+        JSONArray errorArray = new JSONArray();
+        for (ParsingError error : errors) {
+            errorArray.add(error.toJson());
+        }
+
+        JSONObject entry = new JSONObject();
+        entry.put("sourceHash", sourceHash);
+        entry.put("copybooks", copybooks);
+        entry.put("outputs", outputNames);
+        entry.put("errors", errorArray);
+        current.put(keyOf(inputFile), entry);
+    }
+
+    /**
+     * Gets the number of programs carried over from the previous run.
+     * @return Number of skipped programs
+     */
+    public int getReusedCount() {
+        return reused.get();
+    }
+
+    /**
+     * Writes the manifest, keeping the entries of programs this run did not process, and deletes
+     * the outputs of programs that were processed again without them or whose source is gone.
+     * @return Number of obsolete outputs deleted
+     * @throws IOException If the manifest cannot be written
+     */
+    public int save() throws IOException {
+        JSONObject programs = new JSONObject();
+        programs.putAll(current);
+        for (Map.Entry<String, JSONObject> entry : earlier.entrySet()) {
+            String key = entry.getKey();
+            if (current.containsKey(key) || !Files.exists(sourceOf(key))) continue;
+            JSONObject kept = entry.getValue();
+            if (processed.contains(key) || !previous.containsKey(key)) {
+                // Outputs stay tracked, but the entry no longer describes them under this configuration
+                kept = new JSONObject(kept);
+                kept.put("sourceHash", "");
+            }
+            programs.put(key, kept);
+        }
+
+        Set<String> currentOutputs = new HashSet<>();
+        for (Object entry : programs.values()) {
+            for (Object output : (JSONArray) ((JSONObject) entry).get("outputs")) {
+                currentOutputs.add((String) output);
+            }
+        }
+        int deleted = 0;
+        for (JSONObject entry : earlier.values()) {
+            for (Object output : (JSONArray) entry.get("outputs")) {
+                if (!currentOutputs.contains(output) && Files.deleteIfExists(outputDir.resolve((String) output))) {
+                    deleted++;
+                }
+            }
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("configHash", configHash);
+        json.put("programs", programs);
+        try (BufferedWriter writer = Files.newBufferedWriter(outputDir.resolve(FILE_NAME), StandardCharsets.UTF_8)) {
+            writer.write(json.toJSONString());
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,40 @@
+package cobol;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.TokenSource;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Token stream that lets a parse be cancelled by interrupting the parsing thread, or through a
+ * flag for parses on pool threads that are never interrupted.
+ * Both matching and adaptive prediction advance through {@link #consume()}, so even a
+ * runaway lookahead stops at the next token.
+ */
+public class CancellableTokenStream extends CommonTokenStream {
+    private static final BooleanSupplier NEVER = () -> false;
+
+    private final BooleanSupplier cancelled;
+
+    public CancellableTokenStream(TokenSource tokenSource) {
+        this(tokenSource, NEVER);
+    }
+
+    /**
+     * @param tokenSource The lexer
+     * @param cancelled Checked before every token, in addition to the thread's interrupt status
+     */
+    public CancellableTokenStream(TokenSource tokenSource, BooleanSupplier cancelled) {
+        super(tokenSource);
+        this.cancelled = cancelled;
+    }
+
+    @Override
+    public void consume() {
+        if (Thread.currentThread().isInterrupted() || cancelled.getAsBoolean()) {
+            throw new CancellationException("Parse cancelled");
+        }
+        super.consume();
+    }
+}
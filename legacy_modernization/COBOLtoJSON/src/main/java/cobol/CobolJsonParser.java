@@ -1,22 +1,21 @@
 package cobol;
 
-import cobol.antlr.Cobol85Lexer;
-import cobol.antlr.Cobol85Parser;
 import org.antlr.v4.runtime.*;
-import org.antlr.v4.runtime.tree.ParseTree;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONArray;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -25,41 +24,326 @@ import java.util.stream.Stream;
  */
 public class CobolJsonParser {
     private static final int THREAD_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    private static final int SHUTDOWN_GRACE_SECONDS = 30;
     private static JSONObject config;
+    private static String configHash;
+    private static BuildManifest buildManifest;
+    private static CorpusWriter corpusWriter;
+    private static OutputSections outputSections = OutputSections.ALL;
+    private static final ParseReport parseReport = new ParseReport();
 
     /**
      * Entry point for the COBOL parser.
-     * @param args Command-line arguments: <input_file_or_folder> <output_folder> [include_dir]
+     * @param args Command-line arguments: <input_file_or_folder> <output_folder> [include_dir],
+     *             or --stdio [include_dir], or --serve <port> [include_dir] to run as a parse service,
+     *             or --train-dfa <corpus_file_or_folder> <snapshot_file> [include_dir] to write a DFA snapshot,
+     *             or --train-startup <sample_file_or_folder> [include_dir] to write a startup archive for the jar;
+     *             --sections <name,...> anywhere selects the output sections, overriding "outputSections"
      * @throws Exception If parsing fails due to I/O or configuration errors
      */
     public static void main(String[] args) throws Exception {
-        if (args.length < 2) {
+        String sectionsArg = null;
+        int sectionsAt = Arrays.asList(args).indexOf("--sections");
+        if (sectionsAt >= 0 && sectionsAt + 1 < args.length) {
+            sectionsArg = args[sectionsAt + 1];
+            List<String> rest = new ArrayList<>(Arrays.asList(args));
+            rest.subList(sectionsAt, sectionsAt + 2).clear();
+            args = rest.toArray(new String[0]);
+        }
+        boolean service = args.length >= 1 && ("--stdio".equals(args[0]) || "--serve".equals(args[0]));
+        boolean stdio = service && "--stdio".equals(args[0]);
+        boolean train = args.length >= 1 && "--train-dfa".equals(args[0]);
+        if ((args.length < 2 && !stdio) || (train && args.length < 3)) {
             System.err.println("Usage: java CobolJsonParser <input_file_or_folder> <output_folder> [include_dir]");
+            System.err.println("       java CobolJsonParser --stdio [include_dir]");
+            System.err.println("       java CobolJsonParser --serve <port> [include_dir]");
+            System.err.println("       java CobolJsonParser --train-dfa <corpus_file_or_folder> <snapshot_file> [include_dir]");
+            System.err.println("       java CobolJsonParser --train-startup <sample_file_or_folder> [include_dir]");
+            System.err.println("       add --sections <name,...> to produce only some output sections");
             System.exit(1);
         }
 
+        if ("--train-startup".equals(args[0])) {
+            StartupTrainer trainer = new StartupTrainer(Paths.get(args[1]), (args.length >= 3) ? Paths.get(args[2]) : null);
+            trainer.train();
+            trainer.benchmark();
+            return;
+        }
+
         // Load configuration
         loadConfig();
+        try {
+            SourceFiles.setEncoding(SourceEncoding.of((String) config.getOrDefault("sourceEncoding", "UTF-8"),
+                    ((Number) config.getOrDefault("recordLength", 0L)).intValue()));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid source encoding in config.json: " + e.getMessage());
+            System.exit(1);
+        }
+        if (!Arrays.asList("json", "cbor", "both").contains(outputFormat())) {
+            System.err.println("Invalid outputFormat in config.json: " + config.get("outputFormat") + " (expected json, cbor or both)");
+            System.exit(1);
+        }
+        String outputLayout = ((String) config.getOrDefault("outputLayout", "files")).toLowerCase(Locale.ROOT);
+        if (!Arrays.asList("files", "ndjson").contains(outputLayout)) {
+            System.err.println("Invalid outputLayout in config.json: " + config.get("outputLayout") + " (expected files or ndjson)");
+            System.exit(1);
+        }
+        if ("ndjson".equals(outputLayout) && !"json".equals(outputFormat())) {
+            System.err.println("outputLayout ndjson writes JSON records; set outputFormat to json");
+            System.exit(1);
+        }
+        try {
+            JSONArray configSections = (JSONArray) config.get("outputSections");
+            outputSections = OutputSections.of(sectionsArg != null ? Arrays.asList(sectionsArg.split(","))
+                    : configSections != null ? new ArrayList<String>(configSections) : null);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid output sections: " + e.getMessage());
+            System.exit(1);
+        }
+        if (outputSections != OutputSections.ALL) {
+            // --sections overrides config.json, so incremental runs must see the selection actually used
+            configHash = ContentHash.of(configHash + "\noutputSections=" + outputSections);
+        }
+
+        if (train) {
+            trainDfa(args);
+            return;
+        }
+        preloadDfaSnapshot(stdio ? System.err : System.out); // stdout carries the protocol in stdio mode
+
+        if (service) {
+            serve(args);
+            return;
+        }
 
         Path inputPath = Paths.get(args[0]);
         Path outputDir = Paths.get(args[1]);
+        if (outputSections != OutputSections.ALL) {
+            System.out.println("Output sections: " + outputSections);
+        }
         Path includeDir = (args.length >= 3) ? Paths.get(args[2]) : inputPath;
 
         Files.createDirectories(outputDir);
-        CobolPreprocessor preprocessor = new CobolPreprocessor(includeDir);
+        long copybookBudget = ((Number) config.getOrDefault("copybookCacheMB", 64L)).longValue() * 1024 * 1024;
+        CopybookStore copybookStore = new CopybookStore(copybookBudget);
+        CopybookHashes copybookHashes = new CopybookHashes(copybookStore);
+        CopybookResolver copybookResolver = createCopybookResolver(includeDir);
+        Object cacheDir = config.get("preprocessCacheDir");
+        PreprocessCache preprocessCache = (cacheDir != null) ? new PreprocessCache(Paths.get((String) cacheDir), copybookHashes) : null;
+        CobolPreprocessor preprocessor = new CobolPreprocessor(copybookResolver, copybookStore, preprocessCache);
+        if ("ndjson".equalsIgnoreCase((String) config.getOrDefault("outputLayout", "files"))) {
+            // Shards are rewritten on every run, so there are no per-program outputs to carry over
+            if (Boolean.TRUE.equals(config.get("incremental"))) {
+                System.out.println("Incremental builds are not supported with outputLayout ndjson; processing all files");
+            }
+            long shardBytes = ((Number) config.getOrDefault("shardSizeMB", 256L)).longValue() * 1024 * 1024;
+            corpusWriter = new CorpusWriter(outputDir, (String) config.getOrDefault("outputPrefix", ""), shardBytes,
+                    Boolean.TRUE.equals(config.get("gzipShards")));
+        } else if (Boolean.TRUE.equals(config.get("incremental"))) {
+            buildManifest = BuildManifest.load(outputDir, inputPath, configHash, copybookResolver, copybookHashes);
+        }
         List<ParsingError> errors = Collections.synchronizedList(new ArrayList<>());
 
-        if (Files.isDirectory(inputPath)) {
-            processDirectory(inputPath, outputDir, preprocessor, errors);
+        int queueCapacity = ((Number) config.getOrDefault("queueCapacity", (long) THREAD_POOL_SIZE * 4)).intValue();
+        long timeoutMillis = ((Number) config.getOrDefault("fileTimeoutSeconds", 0L)).longValue() * 1000;
+        boolean pipelineMode = Files.isDirectory(inputPath)
+                && "pipeline".equalsIgnoreCase((String) config.getOrDefault("batchMode", "pipeline"));
+        BatchPipeline pipeline = pipelineMode ? createPipeline(outputDir, preprocessor, errors, queueCapacity, timeoutMillis) : null;
+        BoundedWorkQueue workQueue = pipelineMode ? null : new BoundedWorkQueue(THREAD_POOL_SIZE, queueCapacity, timeoutMillis);
+        CountDownLatch reportsWritten = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // On Ctrl-C, cancel outstanding files and let main write the reports for what finished
+            if (reportsWritten.getCount() == 0) return;
+            System.err.println("Shutting down, writing partial results...");
+            if (pipeline != null) pipeline.stop();
+            if (workQueue != null) workQueue.stop();
+            try {
+                reportsWritten.await(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        try {
+            if (pipeline != null) {
+                processDirectory(inputPath, outputDir, errors, pipeline::submit);
+                pipeline.awaitCompletion();
+                pipeline.printStatistics();
+            } else if (Files.isDirectory(inputPath)) {
+                processDirectory(inputPath, outputDir, errors, file -> submitFile(file, outputDir, preprocessor, errors, workQueue));
+                workQueue.awaitCompletion();
+            } else {
+                submitFile(inputPath, outputDir, preprocessor, errors, workQueue);
+                workQueue.awaitCompletion();
+            }
+            writeReports(outputDir, errors, copybookStore, preprocessCache);
+        } finally {
+            reportsWritten.countDown();
+        }
+    }
+
+    /**
+     * Builds the staged batch pipeline. I/O stages get "pipelineIoThreads" workers. CPU stages get
+     * "pipelineCpuThreads" workers each if it is set; by default they share the cores instead, with
+     * an equal part for each and the remainder for parse, so that all CPU workers together come to
+     * about one per core. "stageThreads" can override the count of individual stages by name.
+     * On Java 21 the I/O stages run on up to "virtualIoThreads" virtual threads instead, unless
+     * "virtualThreads" is false.
+     * @param outputDir Output directory path
+     * @param preprocessor COBOL preprocessor instance
+     * @param errors List to collect parsing errors
+     * @param queueCapacity Queue capacity of each stage
+     * @param timeoutMillis Time limit per file across all stages
+     * @return The pipeline
+     */
+    private static BatchPipeline createPipeline(Path outputDir, CobolPreprocessor preprocessor, List<ParsingError> errors,
+                                                int queueCapacity, long timeoutMillis) {
+        boolean virtualIo = WorkerThreads.virtualAvailable() && !Boolean.FALSE.equals(config.get("virtualThreads"));
+        long defaultIoThreads = virtualIo ? 256 : Math.max(2, THREAD_POOL_SIZE);
+        int ioThreads = ((Number) config.getOrDefault(virtualIo ? "virtualIoThreads" : "pipelineIoThreads", defaultIoThreads)).intValue();
+        List<BatchPipeline.Stage> stages = stages(outputDir, preprocessor);
+        Map<String, Integer> threadOverrides = new HashMap<>();
+        int cpuThreads;
+        if (config.get("pipelineCpuThreads") != null) {
+            cpuThreads = ((Number) config.get("pipelineCpuThreads")).intValue();
         } else {
-            processFile(inputPath, outputDir, preprocessor, errors);
+            int cpuStages = 0;
+            for (BatchPipeline.Stage stage : stages) {
+                if (!stage.io) cpuStages++;
+            }
+            cpuThreads = Math.max(1, THREAD_POOL_SIZE / cpuStages);
+            threadOverrides.put("parse", Math.max(1, THREAD_POOL_SIZE - cpuThreads * (cpuStages - 1)));
+        }
+        JSONObject stageThreads = (JSONObject) config.getOrDefault("stageThreads", new JSONObject());
+        for (Object stage : stageThreads.keySet()) {
+            threadOverrides.put((String) stage, ((Number) stageThreads.get(stage)).intValue());
         }
+        if (virtualIo) {
+            System.out.printf("Read, preprocess and write stages on virtual threads (%d in flight per stage)%n", ioThreads);
+        }
+        return new BatchPipeline(stages, ioThreads, virtualIo, cpuThreads, threadOverrides,
+                queueCapacity, timeoutMillis, errors);
+    }
+
+    /**
+     * Runs the parse service. Copybooks are checked for changes on every use, since the
+     * service outlives edits to them; the on-disk preprocess cache is not used.
+     * @param args Command-line arguments starting with --stdio or --serve
+     * @throws IOException If the service cannot be started
+     */
+    private static void serve(String[] args) throws IOException {
+        boolean stdio = "--stdio".equals(args[0]);
+        int includeArg = stdio ? 1 : 2;
+        Path includeDir = Paths.get(args.length > includeArg ? args[includeArg] : ".");
+        long copybookBudget = ((Number) config.getOrDefault("copybookCacheMB", 64L)).longValue() * 1024 * 1024;
+        CopybookStore copybookStore = new CopybookStore(copybookBudget, true);
+        ParseServer server = new ParseServer(new CobolPreprocessor(createCopybookResolver(includeDir), copybookStore, null));
+        if (stdio) {
+            server.serveStdio();
+        } else {
+            server.serveSocket(Integer.parseInt(args[1]));
+        }
+    }
 
+    /**
+     * Parses a corpus and writes the DFA states built up along the way to a snapshot, which later
+     * runs preload through the "dfaSnapshot" setting. Files are parsed with the configured parse
+     * and split modes, so the snapshot covers the decisions those modes take.
+     * @param args Command-line arguments starting with --train-dfa
+     * @throws IOException If the snapshot cannot be written
+     * @throws InterruptedException If interrupted while parsing the corpus
+     */
+    private static void trainDfa(String[] args) throws IOException, InterruptedException {
+        Path corpus = Paths.get(args[1]);
+        Path snapshot = Paths.get(args[2]);
+        Path includeDir = (args.length >= 4) ? Paths.get(args[3]) : corpus;
+        long copybookBudget = ((Number) config.getOrDefault("copybookCacheMB", 64L)).longValue() * 1024 * 1024;
+        CobolPreprocessor preprocessor = new CobolPreprocessor(createCopybookResolver(includeDir), new CopybookStore(copybookBudget), null);
+        List<ParsingError> errors = Collections.synchronizedList(new ArrayList<>());
+        int queueCapacity = ((Number) config.getOrDefault("queueCapacity", (long) THREAD_POOL_SIZE * 4)).intValue();
+        BoundedWorkQueue workQueue = new BoundedWorkQueue("train", THREAD_POOL_SIZE, queueCapacity, 0);
+
+        long start = System.nanoTime();
+        FileSubmitter submitter = file -> workQueue.submit(() -> errors.addAll(processInMemory(file, null, preprocessor).errors),
+                reason -> errors.add(new ParsingError(file.toString(), "Processing " + reason, 0)));
+        if (Files.isDirectory(corpus)) {
+            processDirectory(corpus, corpus, errors, submitter);
+        } else {
+            submitter.submit(corpus);
+        }
+        workQueue.awaitCompletion();
+        long parseMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        DfaSnapshot.Summary written = DfaSnapshot.write(snapshot);
+        System.out.printf("DFA snapshot: %d parser and %d lexer states from %d files (%d ms) written to %s%n",
+                written.parserStates, written.lexerStates, workQueue.getCompleted(), parseMillis, snapshot);
+        if (!errors.isEmpty()) {
+            System.out.printf("%d errors while parsing the corpus%n", errors.size());
+        }
+    }
+
+    /**
+     * Restores the DFA snapshot named by "dfaSnapshot", if any. A missing or unusable snapshot
+     * only costs the warm-up it would have saved, so the run continues without it.
+     * @param log Stream for the outcome
+     */
+    private static void preloadDfaSnapshot(PrintStream log) {
+        Object snapshot = config.get("dfaSnapshot");
+        if (snapshot == null) return;
+        Path snapshotPath = Paths.get((String) snapshot);
+        if (!Files.exists(snapshotPath)) {
+            log.printf("DFA snapshot %s not found, starting cold%n", snapshotPath);
+            return;
+        }
+        try {
+            DfaSnapshot.Summary loaded = DfaSnapshot.load(snapshotPath);
+            log.printf("DFA snapshot: %d parser and %d lexer states preloaded%n", loaded.parserStates, loaded.lexerStates);
+        } catch (IOException e) {
+            log.printf("DFA snapshot %s not loaded: %s%n", snapshotPath, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the error, manifest and parse reports and prints run statistics.
+     * @param outputDir Output directory path
+     * @param errors Collected parsing errors
+     * @param copybookStore Copybook store of the run
+     * @param preprocessCache Preprocess cache of the run, or null
+     * @throws IOException If a report cannot be written
+     */
+    private static void writeReports(Path outputDir, List<ParsingError> errors, CopybookStore copybookStore,
+                                     PreprocessCache preprocessCache) throws IOException {
         // Write error report
         if (!errors.isEmpty()) {
             Path errorPath = outputDir.resolve("parsing_errors.json");
             writeErrorReport(errorPath, errors);
         }
+
+        if (corpusWriter != null) {
+            corpusWriter.close();
+            System.out.printf("Corpus output: %d programs in %d shards%n", corpusWriter.getRecords(), corpusWriter.getShards());
+        }
+
+        if (buildManifest != null) {
+            int deleted = buildManifest.save();
+            System.out.printf("Incremental: %d unchanged, %d obsolete outputs removed%n", buildManifest.getReusedCount(), deleted);
+        }
+
+        if (copybookStore.getDiskReads() > 0) {
+            System.out.printf("Copybooks read from disk: %d%n", copybookStore.getDiskReads());
+        }
+        if (preprocessCache != null) {
+            System.out.printf("Preprocess cache: %d hits, %d misses%n", preprocessCache.getHits(), preprocessCache.getMisses());
+        }
+
+        // Write parse stage report
+        if (!parseReport.isEmpty()) {
+            Path reportPath = outputDir.resolve("parse_report.json");
+            parseReport.keepPrevious(reportPath);
+            parseReport.write(reportPath);
+            System.out.printf("Parse stages: %d SLL, %d LL%n",
+                    parseReport.count(TwoStageParser.Stage.SLL), parseReport.count(TwoStageParser.Stage.LL));
+        }
     }
 
     /**
@@ -73,38 +357,98 @@ public class CobolJsonParser {
             String configContent = new String(Files.readAllBytes(configPath), StandardCharsets.UTF_8);
             JSONParser parser = new JSONParser();
             config = (JSONObject) parser.parse(configContent);
+            configHash = ContentHash.of(configContent);
         } else {
             config = new JSONObject();
+            configHash = ContentHash.of("");
+        }
+    }
+
+    /**
+     * Builds the copybook resolver. The include directory from the command line is searched first,
+     * followed by the "copybookPaths" entries of the configuration, each with its own extension list.
+     * @param includeDir Include directory from the command line
+     * @return The copybook resolver
+     */
+    private static CopybookResolver createCopybookResolver(Path includeDir) {
+        List<CopybookResolver.SearchPath> searchPaths = new ArrayList<>();
+        searchPaths.add(new CopybookResolver.SearchPath(includeDir, CopybookResolver.DEFAULT_EXTENSIONS));
+        JSONArray copybookPaths = (JSONArray) config.getOrDefault("copybookPaths", new JSONArray());
+        for (Object entry : copybookPaths) {
+            JSONObject pathJson = (JSONObject) entry;
+            JSONArray extensions = (JSONArray) pathJson.get("extensions");
+            List<String> extensionList = new ArrayList<>();
+            if (extensions != null) {
+                for (Object ext : extensions) extensionList.add((String) ext);
+            } else {
+                extensionList.addAll(CopybookResolver.DEFAULT_EXTENSIONS);
+            }
+            searchPaths.add(new CopybookResolver.SearchPath(Paths.get((String) pathJson.get("path")), extensionList));
         }
+        long refreshMillis = ((Number) config.getOrDefault("copybookIndexRefreshMs", 2000L)).longValue();
+        return new CopybookResolver(searchPaths, refreshMillis);
     }
 
     /**
-     * Processes a directory of COBOL files in parallel.
+     * Receives the files of a directory in dispatch order.
+     */
+    private interface FileSubmitter {
+        /**
+         * @param file The COBOL file
+         * @return false to stop submitting
+         * @throws InterruptedException If interrupted while waiting for queue space
+         */
+        boolean submit(Path file) throws InterruptedException;
+    }
+
+    /**
+     * Collects the COBOL files of a directory and hands them to the workers, largest first unless
+     * "scheduleOrder" is "walk". Submission pauses while the workers' queue is full.
      * @param inputDir Input directory path
-     * @param outputDir Output directory path
-     * @param preprocessor COBOL preprocessor instance
+     * @param outputDir Output directory path, holding the parse report of the previous run
      * @param errors List to collect parsing errors
+     * @param submitter Receives each file
+     * @throws InterruptedException If interrupted while waiting for queue space
      */
-    private static void processDirectory(Path inputDir, Path outputDir, CobolPreprocessor preprocessor, List<ParsingError> errors) {
-        ExecutorService executor = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+    private static void processDirectory(Path inputDir, Path outputDir, List<ParsingError> errors, FileSubmitter submitter)
+            throws InterruptedException {
+        List<Path> files;
         try (Stream<Path> paths = Files.walk(inputDir)) {
-            paths.filter(p -> p.toString().endsWith(".cbl") || p.toString().endsWith(".cob"))
-                    .forEach(p -> executor.submit(() -> processFile(p, outputDir, preprocessor, errors)));
-        } catch (IOException e) {
+            files = paths.filter(p -> p.toString().endsWith(".cbl") || p.toString().endsWith(".cob")).collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
             errors.add(new ParsingError(inputDir.toString(), "Failed to walk directory: " + e.getMessage(), 0));
+            return;
         }
 
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(1, TimeUnit.HOURS)) {
-                executor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
-            Thread.currentThread().interrupt();
+        if (!"walk".equalsIgnoreCase((String) config.getOrDefault("scheduleOrder", "largest-first"))) {
+            boolean countLines = "lines".equalsIgnoreCase((String) config.getOrDefault("scheduleSize", "bytes"));
+            LargestFirstScheduler scheduler = new LargestFirstScheduler(
+                    ParseReport.readDurations(outputDir.resolve("parse_report.json")), countLines);
+            files = scheduler.order(files);
+            System.out.printf("Scheduled %d files largest first, %d by previous parse time%n", files.size(), scheduler.getTimedFiles());
+        }
+
+        for (Path file : files) {
+            if (!submitter.submit(file)) break;
         }
     }
 
+    /**
+     * Queues one file, recording an error if it is timed out or cancelled.
+     * @param inputFile Input file path
+     * @param outputDir Output directory path
+     * @param preprocessor COBOL preprocessor instance
+     * @param errors List to collect parsing errors
+     * @param workQueue Bounded queue running the files
+     * @return false if the queue no longer accepts work
+     * @throws InterruptedException If interrupted while waiting for queue space
+     */
+    private static boolean submitFile(Path inputFile, Path outputDir, CobolPreprocessor preprocessor, List<ParsingError> errors,
+                                      BoundedWorkQueue workQueue) throws InterruptedException {
+        return workQueue.submit(() -> processFile(inputFile, outputDir, preprocessor, errors),
+                reason -> errors.add(new ParsingError(inputFile.toString(), "Processing " + reason, 0)));
+    }
+
     /**
      * Processes a single COBOL file and generates JSON and Mermaid outputs.
      * @param inputFile Input file path
@@ -113,74 +457,269 @@ public class CobolJsonParser {
      * @param errors List to collect parsing errors
      */
     static void processFile(Path inputFile, Path outputDir, CobolPreprocessor preprocessor, List<ParsingError> errors) {
+        FileJob job = new FileJob(inputFile);
         try {
-            String sourceCode = new String(Files.readAllBytes(inputFile), StandardCharsets.UTF_8);
-            String preprocessed = preprocessor.preprocess(sourceCode);
-            CharStream input = CharStreams.fromString(preprocessed);
-            Cobol85Lexer lexer = new Cobol85Lexer(input);
-            CommonTokenStream tokens = new CommonTokenStream(lexer);
-            Cobol85Parser parser = new Cobol85Parser(tokens);
-            parser.removeErrorListeners();
-            parser.addErrorListener(new DiagnosticErrorListener(inputFile, errors));
-
-            ParseTree tree = parser.startRule();
-
-            if (parser.getNumberOfSyntaxErrors() > 0) {
-                errors.add(new ParsingError(inputFile.toString(), "Syntax errors detected in COBOL code", 0));
-                return;
+            for (BatchPipeline.Stage stage : stages(outputDir, preprocessor)) {
+                if (!stage.step.run(job)) break;
+            }
+        } catch (Exception e) {
+            job.fail(e);
+        } finally {
+            errors.addAll(job.errors);
+        }
+    }
+
+    /**
+     * Processes one program without writing its outputs, leaving them in the returned job.
+     * @param inputFile The program path; also names the program when the source is given inline
+     * @param source The program source, or null to read it from the path
+     * @param preprocessor COBOL preprocessor instance
+     * @return The finished job holding the outputs and errors
+     */
+    static FileJob processInMemory(Path inputFile, String source, CobolPreprocessor preprocessor) {
+        FileJob job = new FileJob(inputFile);
+        List<BatchPipeline.Stage> stages = stages(null, preprocessor);
+        try {
+            if (source != null) {
+                job.sourceCode = source;
+            } else if (!readSource(job)) {
+                return job;
+            }
+            for (BatchPipeline.Stage stage : stages.subList(1, stages.size() - 1)) {
+                if (!stage.step.run(job)) break;
             }
+        } catch (Exception e) {
+            job.fail(e);
+        }
+        return job;
+    }
 
-            CobolJsonVisitor visitor = new CobolJsonVisitor();
-            String programId = inputFile.getFileName().toString().replaceAll("\\.(cbl|cob)$", "");
-            visitor.setProgramId(programId);
-            visitor.setTokenStream(tokens);
-
-            WorkingStorageVisitor wsVisitor = new WorkingStorageVisitor();
-            DivisionSectionVisitor structureVisitor = new DivisionSectionVisitor();
-            VariableTrackerVisitor variableVisitor = new VariableTrackerVisitor(wsVisitor.getDeclaredVariables());
-            StructuredStatementTransformer transformer = new StructuredStatementTransformer();
-
-            visitor.visit(tree);
-            wsVisitor.visit(tree);
-            structureVisitor.visit(tree);
-            variableVisitor.visit(tree);
-            transformer.visit(tree); // Process FD entries
-            transformer.processCopybooks(preprocessor); // Process copybooks
-            errors.addAll(visitor.getErrors());
-            errors.addAll(transformer.getErrors());
-
-            JSONObject finalOutput = visitor.getJsonOutput();
-            finalOutput.put("workingStorage", wsVisitor.getWorkingStorageJson());
-            finalOutput.put("structure", structureVisitor.getDivisionStructure());
-            finalOutput.put("dataMovement", variableVisitor.getMovementJson());
-            finalOutput.put("copybooks", new JSONArray() {{ addAll(transformer.getCopybooksIncluded()); }});
-            finalOutput.put("fileDescriptions", transformer.getFileDescriptions());
-
-            StructuredStatementTransformer.TransformationResult result = transformer.transformParagraph(visitor.getParagraphMap().getOrDefault("_MAIN", new JSONArray()), new StructuredStatementTransformer.ContextMetadata("_MAIN", programId));
-            finalOutput.put("structuredStatements", new JSONObject() {{ put("_MAIN", result.statements); }});
-            finalOutput.put("callGraph", new JSONObject() {{ put("_MAIN", new JSONArray() {{ addAll(result.callGraph.getOrDefault("_MAIN", Collections.emptySet())); }}); }});
-            finalOutput.put("complexity", result.cyclomaticComplexity);
-
-            String outputPrefix = (String) config.getOrDefault("outputPrefix", "");
-            String jsonName = outputPrefix + inputFile.getFileName().toString().replaceAll("\\.(cbl|cob)$", ".json");
-            Path outPath = outputDir.resolve(jsonName);
-            try (BufferedWriter writer = Files.newBufferedWriter(outPath, StandardCharsets.UTF_8)) {
-                writer.write(finalOutput.toJSONString());
+    /**
+     * Gets the processing steps of a file in order.
+     * @param outputDir Output directory path
+     * @param preprocessor COBOL preprocessor instance
+     * @return The read, preprocess, lex, parse, analyze and write stages
+     */
+    static List<BatchPipeline.Stage> stages(Path outputDir, CobolPreprocessor preprocessor) {
+        return Arrays.asList(
+                new BatchPipeline.Stage("read", true, CobolJsonParser::readSource),
+                new BatchPipeline.Stage("preprocess", true, job -> preprocess(job, preprocessor)), // reads copybooks
+                new BatchPipeline.Stage("lex", false, CobolJsonParser::lex),
+                new BatchPipeline.Stage("parse", false, CobolJsonParser::parse),
+                new BatchPipeline.Stage("analyze", false, CobolJsonParser::analyze),
+                new BatchPipeline.Stage("write", true, job -> writeOutputs(job, outputDir)));
+    }
+
+    /**
+     * Reads the source, or carries the file over from the previous run if it is unchanged.
+     * @param job The file being processed
+     * @return false if the file is unchanged and needs no further work
+     * @throws IOException If the file cannot be read
+     */
+    private static boolean readSource(FileJob job) throws IOException {
+        ByteBuffer sourceBytes = SourceFiles.map(job.inputFile);
+        if (buildManifest != null) {
+            job.sourceHash = ContentHash.of(sourceBytes);
+            if (buildManifest.reuse(job.inputFile, job.sourceHash, job.errors)) {
+                System.out.printf("✔ Unchanged %-30s%n", job.inputFile.getFileName());
+                return false;
             }
+        }
+        job.sourceBytes = sourceBytes;
+        return true;
+    }
 
-            Path callGraphPath = outputDir.resolve(outputPrefix + "callgraph_" + visitor.getProgramId() + ".md");
-            Files.write(callGraphPath, visitor.getCallGraphMermaid().getBytes(StandardCharsets.UTF_8));
+    private static boolean preprocess(FileJob job, CobolPreprocessor preprocessor) throws IOException {
+        job.preprocessing = job.sourceBytes != null
+                ? SourceFiles.decode(job.sourceBytes, preprocessor::preprocess)
+                : preprocessor.preprocess(job.sourceCode);
+        job.sourceBytes = null;
+        job.sourceCode = null;
+        return true;
+    }
 
-            Path dataFlowPath = outputDir.resolve(outputPrefix + "dataflow_" + visitor.getProgramId() + ".md");
-            Files.write(dataFlowPath, variableVisitor.getDataFlowMermaid().getBytes(StandardCharsets.UTF_8));
+    private static boolean twoStage() {
+        return !"ll".equalsIgnoreCase((String) config.getOrDefault("parseMode", "two-stage"));
+    }
 
-            System.out.printf("✔ Parsed %-30s → %s%n", inputFile.getFileName(), outPath.getFileName());
+    /**
+     * Tokenizes the preprocessed source. In split mode the program is instead parsed here in
+     * chunks, each with its own lexer; the parse step then only handles the fallback.
+     * @param job The file being processed
+     * @return true
+     * @throws InterruptedException If interrupted while waiting for chunk parses
+     */
+    private static boolean lex(FileJob job) throws InterruptedException {
+        long start = System.nanoTime();
+        if (Boolean.TRUE.equals(config.get("splitParse")) && !streaming()) {
+            int chunkLines = ((Number) config.getOrDefault("splitChunkLines", 2000L)).intValue();
+            job.segments = new SplitProgramParser(chunkLines, twoStage()).parse(job.preprocessing.getText());
+        }
+        if (job.segments == null) {
+            job.tokens = ParseContext.current().lex(job.preprocessing.getCharStream(), !Boolean.FALSE.equals(config.get("compactTokens")));
+        }
+        job.parseNanos += System.nanoTime() - start;
+        return true;
+    }
 
-        } catch (IOException e) {
-            errors.add(new ParsingError(inputFile.toString(), "I/O error: " + e.getMessage(), 0));
-        } catch (Exception e) {
-            errors.add(new ParsingError(inputFile.toString(), "Processing error: " + e.getMessage(), 0));
+    /**
+     * Parses the tokens of the file.
+     * @param job The file being processed
+     * @return false if the file has syntax errors
+     */
+    private static boolean parse(FileJob job) {
+        long start = System.nanoTime();
+        if (job.segments != null) {
+            parseReport.recordStage(job.inputFile, ParseSegment.slowestStage(job.segments), parseMillis(job, start));
+            return true;
+        }
+        ParseContext parseContext = ParseContext.current();
+        try {
+            DiagnosticErrorListener errorListener = new DiagnosticErrorListener(job.inputFile, job.errors);
+            StreamingTreeWalker walker = null;
+            TwoStageParser.Result parsed;
+            if (streaming()) {
+                String programId = programIdOf(job.inputFile);
+                walker = new StreamingTreeWalker(job.tokens, () -> new ProgramAnalyses(programId, outputSections));
+                parsed = parseContext.stream(job.tokens, errorListener, twoStage(), walker);
+            } else {
+                parsed = parseContext.parse(job.tokens, errorListener, twoStage());
+            }
+            parseReport.recordStage(job.inputFile, parsed.stage, parseMillis(job, start));
+            if (parseContext.getParser().getNumberOfSyntaxErrors() > 0) {
+                job.errors.add(new ParsingError(job.inputFile.toString(), "Syntax errors detected in COBOL code", 0));
+                return false;
+            }
+            if (walker != null) {
+                job.analyses = walker.getAnalyses();
+            } else {
+                job.segments = Collections.singletonList(new ParseSegment(parsed.tree, job.tokens, parsed.stage));
+            }
+            job.tokens = null;
+        } finally {
+            parseContext.release();
+        }
+        return true;
+    }
+
+    /**
+     * Whether the analyses run during the parse instead of over a parse tree.
+     */
+    private static boolean streaming() {
+        return "streaming".equalsIgnoreCase((String) config.getOrDefault("analysisMode", "fused"));
+    }
+
+    private static String programIdOf(Path inputFile) {
+        return inputFile.getFileName().toString().replaceAll("\\.(cbl|cob)$", "");
+    }
+
+    private static long parseMillis(FileJob job, long parseStart) {
+        job.parseNanos += System.nanoTime() - parseStart;
+        return TimeUnit.NANOSECONDS.toMillis(job.parseNanos);
+    }
+
+    /**
+     * Runs the analyses over the parse tree, unless they already ran during the parse, and assembles the outputs.
+     * @param job The file being processed
+     * @return true
+     * @throws InterruptedException If interrupted while waiting for concurrent analysis passes
+     */
+    private static boolean analyze(FileJob job) throws InterruptedException {
+        List<ParseSegment> segments = job.segments;
+        PreprocessingContext preprocessing = job.preprocessing;
+        String programId = programIdOf(job.inputFile);
+
+        ProgramAnalyses analyses = job.analyses != null ? job.analyses : new ProgramAnalyses(programId, outputSections);
+        CobolJsonVisitor visitor = analyses.visitor;
+        WorkingStorageVisitor wsVisitor = analyses.wsVisitor;
+        VariableTrackerVisitor variableVisitor = analyses.variableVisitor;
+
+        if (segments == null || analyses.all().isEmpty()) {
+            // Streaming mode: the analyses already ran as the parser completed each rule
+        } else if ("concurrent".equalsIgnoreCase((String) config.getOrDefault("analysisMode", "fused"))) {
+            // Independent passes in parallel; variable tracking needs the complete working storage
+            ConcurrentAnalysisRunner runner = new ConcurrentAnalysisRunner();
+            if (analyses.structureVisitor != null) runner.add(analyses.structureVisitor);
+            ConcurrentAnalysisRunner.Pass wsPass = wsVisitor != null ? runner.add(wsVisitor) : null;
+            if (variableVisitor != null) runner.add(variableVisitor, wsPass);
+            if (visitor != null) runner.add(visitor);
+            if (analyses.transformer != null) runner.add(analyses.transformer); // Process FD entries
+            runner.run(segments);
+        } else {
+            // Single walk shared by all analyses; transformer processes FD entries
+            new FusedTreeWalker(analyses.all()).walk(segments);
+        }
+        job.segments = null;
+        job.analyses = null;
+
+        job.errors.addAll(analyses.getErrors());
+        job.program = outputSections.hasDocument() ? analyses.toProgram(preprocessing) : null;
+        job.programId = analyses.getProgramId();
+        job.callGraphMermaid = outputSections.has(OutputSections.CALL_GRAPH_MERMAID) ? visitor.getCallGraphMermaid() : null;
+        job.dataFlowMermaid = outputSections.has(OutputSections.DATA_FLOW_MERMAID) ? variableVisitor.getDataFlowMermaid() : null;
+        return true;
+    }
+
+    /**
+     * Gets the configured format of the program outputs: json, cbor (see {@link BinaryOutputWriter}) or both.
+     */
+    private static String outputFormat() {
+        return ((String) config.getOrDefault("outputFormat", "json")).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Writes the JSON or binary output and the Mermaid outputs of the file, or appends its record
+     * to the corpus shards when "outputLayout" is "ndjson".
+     * @param job The file being processed
+     * @param outputDir Output directory path
+     * @return true
+     * @throws IOException If an output cannot be written
+     */
+    private static boolean writeOutputs(FileJob job, Path outputDir) throws IOException {
+        Path inputFile = job.inputFile;
+        if (corpusWriter != null) {
+            corpusWriter.write(job);
+            job.program = null;
+            System.out.printf("✔ Parsed %-30s → corpus%n", inputFile.getFileName());
+            return true;
+        }
+        String outputPrefix = (String) config.getOrDefault("outputPrefix", "");
+        String fileName = inputFile.getFileName().toString();
+        List<Path> outputs = new ArrayList<>();
+        if (job.program != null && !"cbor".equals(outputFormat())) {
+            Path jsonPath = outputDir.resolve(outputPrefix + fileName.replaceAll("\\.(cbl|cob)$", ".json"));
+            try (JsonStreamWriter writer = JsonStreamWriter.open(jsonPath)) {
+                writer.value(job.program);
+            }
+            outputs.add(jsonPath);
         }
+        if (job.program != null && !"json".equals(outputFormat())) {
+            Path cborPath = outputDir.resolve(outputPrefix + fileName.replaceAll("\\.(cbl|cob)$", ".cbor"));
+            try (BinaryOutputWriter writer = BinaryOutputWriter.open(cborPath)) {
+                writer.value(job.program);
+            }
+            outputs.add(cborPath);
+        }
+        job.program = null;
+
+        if (job.callGraphMermaid != null) {
+            Path callGraphPath = outputDir.resolve(outputPrefix + "callgraph_" + job.programId + ".md");
+            Files.write(callGraphPath, job.callGraphMermaid.getBytes(StandardCharsets.UTF_8));
+            outputs.add(callGraphPath);
+        }
+        if (job.dataFlowMermaid != null) {
+            Path dataFlowPath = outputDir.resolve(outputPrefix + "dataflow_" + job.programId + ".md");
+            Files.write(dataFlowPath, job.dataFlowMermaid.getBytes(StandardCharsets.UTF_8));
+            outputs.add(dataFlowPath);
+        }
+        Path outPath = outputs.get(0);
+
+        if (buildManifest != null) {
+            buildManifest.record(inputFile, job.sourceHash, job.preprocessing, outputs, job.errors);
+        }
+
+        System.out.printf("✔ Parsed %-30s → %s%n", inputFile.getFileName(), outPath.getFileName());
+        return true;
     }
 
     /**
@@ -190,7 +729,7 @@ public class CobolJsonParser {
      * @param tokens The ANTLR token stream
      * @return List of JSON objects with text and line number
      */
-    private static List<JSONObject> splitLine(String text, long line, CommonTokenStream tokens) {
+    private static List<JSONObject> splitLine(String text, long line, TokenStream tokens) {
         JSONArray splitKeywords = (JSONArray) config.getOrDefault("splitKeywords", new JSONArray());
         if (splitKeywords.isEmpty()) {
             splitKeywords.addAll(Arrays.asList("IF", "ELSE", "END-IF", "CALL", "DISPLAY", "PERFORM", "ADD", "SUBTRACT",
@@ -226,8 +765,8 @@ public class CobolJsonParser {
         }
         JSONObject errorReport = new JSONObject();
         errorReport.put("errors", errorArray);
-        try (BufferedWriter writer = Files.newBufferedWriter(errorPath, StandardCharsets.UTF_8)) {
-            writer.write(errorReport.toJSONString());
+        try (JsonStreamWriter writer = JsonStreamWriter.open(errorPath)) {
+            writer.value(errorReport);
         }
     }
 
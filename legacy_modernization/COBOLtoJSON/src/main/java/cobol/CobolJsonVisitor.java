@@ -1,22 +1,18 @@
 package cobol;
 
-import cobol.antlr.Cobol85BaseVisitor;
 import cobol.antlr.Cobol85Parser;
 import org.antlr.v4.runtime.TokenStream;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 
 import java.util.*;
 
 /**
- * Visitor for extracting COBOL program structure and control flow into JSON and Mermaid formats.
+ * Visitor for extracting COBOL program structure and control flow into the program model and Mermaid formats.
  * Supports error reporting and case normalization for modernization.
  */
-public class CobolJsonVisitor extends Cobol85BaseVisitor<Void> {
-    private final Map<String, JSONArray> paragraphMap = new LinkedHashMap<>();
+public class CobolJsonVisitor extends AnalysisVisitor {
+    private final Map<String, Paragraph> paragraphMap = new LinkedHashMap<>();
     private final Set<String> performCalls = new LinkedHashSet<>();
     private final Set<String> callStatements = new LinkedHashSet<>();
-    private final Map<String, String> paragraphOrigins = new HashMap<>();
     private final Map<String, Set<String>> callGraph = new LinkedHashMap<>();
     private final Set<String> callGraphCallNodes = new HashSet<>();
     private final List<ParsingError> errors = new ArrayList<>();
@@ -41,6 +37,15 @@ public class CobolJsonVisitor extends Cobol85BaseVisitor<Void> {
         this.tokens = tokens;
     }
 
+    /**
+     * Switches to the token stream of the segment about to be walked.
+     * @param segment The segment about to be walked
+     */
+    @Override
+    public void enterSegment(ParseSegment segment) {
+        this.tokens = segment.tokens;
+    }
+
     /**
      * Gets the list of parsing errors encountered during visitation.
      * @return List of ParsingError objects
@@ -81,17 +86,15 @@ public class CobolJsonVisitor extends Cobol85BaseVisitor<Void> {
     @Override
     public Void visitProcedureDivision(Cobol85Parser.ProcedureDivisionContext ctx) {
         currentParagraph = "_MAIN";
-        paragraphMap.put(currentParagraph, new JSONArray());
-        paragraphOrigins.put(currentParagraph, programId);
+        paragraphMap.put(currentParagraph, new Paragraph(currentParagraph, programId));
         return visitChildren(ctx);
     }
 
     @Override
     public Void visitParagraph(Cobol85Parser.ParagraphContext ctx) {
         if (ctx.paragraphName() != null) {
-            currentParagraph = ctx.paragraphName().getText();
-            paragraphMap.put(currentParagraph, new JSONArray());
-            paragraphOrigins.put(currentParagraph, programId);
+            currentParagraph = ctx.paragraphName().getText().intern();
+            paragraphMap.put(currentParagraph, new Paragraph(currentParagraph, programId));
         }
         return visitChildren(ctx);
     }
@@ -111,11 +114,7 @@ public class CobolJsonVisitor extends Cobol85BaseVisitor<Void> {
             if (!line.isEmpty()) {
                 line = line.replaceAll("\\s+", " ").replaceAll("'([^']*)'", "'$1'");
                 System.out.println("Sentence at line " + (startLine + i) + ": " + line);
-                JSONObject lineObj = new JSONObject();
-                lineObj.put("text", line);
-                lineObj.put("from", currentParagraph);
-                lineObj.put("line", startLine + i);
-                paragraphMap.get(currentParagraph).add(lineObj);
+                paragraphMap.get(currentParagraph).add(line, startLine + i);
                 processControlFlowTokens(line);
             }
         }
@@ -168,33 +167,6 @@ public class CobolJsonVisitor extends Cobol85BaseVisitor<Void> {
         callGraph.computeIfAbsent(from, k -> new LinkedHashSet<>()).add(to);
     }
 
-    /**
-     * Generates the JSON output for the COBOL program.
-     * @return JSONObject containing program structure, control flow, and errors
-     */
-    public JSONObject getJsonOutput() {
-        JSONObject root = new JSONObject();
-        root.put("programId", programId);
-        root.put("paragraphs", getParagraphJson());
-        root.put("paragraphOrigins", getOriginJson());
-
-        JSONObject calls = new JSONObject();
-        calls.put("PERFORM", new JSONArray() {{ addAll(performCalls); }});
-        calls.put("CALL", new JSONArray() {{ addAll(callStatements); }});
-        root.put("calls", calls);
-
-        root.put("callGraph", getCallGraphJson());
-
-        // Add errors
-        JSONArray errorArray = new JSONArray();
-        for (ParsingError error : errors) {
-            errorArray.add(error.toJson());
-        }
-        root.put("errors", errorArray);
-
-        return root;
-    }
-
     /**
      * Finds unreachable paragraphs using DFS.
      * @return Set of unreachable paragraph names
@@ -222,42 +194,6 @@ public class CobolJsonVisitor extends Cobol85BaseVisitor<Void> {
         }
     }
 
-    /**
-     * Generates paragraph JSON structure.
-     * @return JSONObject mapping paragraphs to statements
-     */
-    private JSONObject getParagraphJson() {
-        JSONObject paraJson = new JSONObject();
-        for (Map.Entry<String, JSONArray> entry : paragraphMap.entrySet()) {
-            paraJson.put(entry.getKey(), entry.getValue());
-        }
-        return paraJson;
-    }
-
-    /**
-     * Generates paragraph origin JSON.
-     * @return JSONObject mapping paragraphs to program IDs
-     */
-    private JSONObject getOriginJson() {
-        JSONObject originJson = new JSONObject();
-        for (Map.Entry<String, String> entry : paragraphOrigins.entrySet()) {
-            originJson.put(entry.getKey(), entry.getValue());
-        }
-        return originJson;
-    }
-
-    /**
-     * Generates call graph JSON.
-     * @return JSONObject representing the call graph
-     */
-    private JSONObject getCallGraphJson() {
-        JSONObject graphJson = new JSONObject();
-        for (Map.Entry<String, Set<String>> entry : callGraph.entrySet()) {
-            graphJson.put(entry.getKey(), new JSONArray() {{ addAll(entry.getValue()); }});
-        }
-        return graphJson;
-    }
-
     /**
      * Generates Mermaid diagram for the call graph.
      * @return String containing Mermaid syntax
@@ -283,7 +219,7 @@ public class CobolJsonVisitor extends Cobol85BaseVisitor<Void> {
         return sb.toString();
     }
 
-    public Map<String, JSONArray> getParagraphMap() {
+    public Map<String, Paragraph> getParagraphMap() {
         return paragraphMap;
     }
 
@@ -294,4 +230,8 @@ public class CobolJsonVisitor extends Cobol85BaseVisitor<Void> {
     public Set<String> getCallStatements() {
         return callStatements;
     }
+
+    public Set<String> getPerformCalls() {
+        return performCalls;
+    }
 }
\ No newline at end of file
@@ -1,101 +1,214 @@
 package cobol;
 
+import org.antlr.v4.runtime.CodePointBuffer;
+
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.*;
-import java.util.*;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
 
 /**
  * Preprocesses COBOL source code by resolving COPY statements and handling copybooks.
- * Supports caching to improve performance.
+ * COPY names are resolved through a {@link CopybookResolver} index. Copybook text is cached in a {@link CopybookStore} shared by all threads, while the
+ * include tracking of each file lives in its own {@link PreprocessingContext}.
  */
 public class CobolPreprocessor {
-    private final Path includeDir;
+    private static final long DEFAULT_STORE_BYTES = 64L * 1024 * 1024;
+
     private static final int MAX_DEPTH = 10;
-    private static final String[] COPY_EXTENSIONS = {".cpy", ".cob", ".inc"};
-    private final Set<String> visitedCopybooks = new HashSet<>();
-    private final Map<String, String> copybookCache = new HashMap<>();
-    private final List<Integer> lineNumberMap = new ArrayList<>();
+    private final CopybookResolver copybookResolver;
+    private final CopybookStore copybookStore;
+    private final PreprocessCache preprocessCache;
 
     public CobolPreprocessor(Path includeDir) {
-        this.includeDir = includeDir;
+        this(new CopybookResolver(includeDir), new CopybookStore(DEFAULT_STORE_BYTES), null);
+    }
+
+    /**
+     * @param copybookResolver Resolves COPY names to files
+     * @param copybookStore Shared copybook text cache
+     * @param preprocessCache Persistent cache of expanded sources, or null to always expand
+     */
+    public CobolPreprocessor(CopybookResolver copybookResolver, CopybookStore copybookStore, PreprocessCache preprocessCache) {
+        this.copybookResolver = copybookResolver;
+        this.copybookStore = copybookStore;
+        this.preprocessCache = preprocessCache;
     }
 
-    public String preprocess(String source) throws IOException {
-        visitedCopybooks.clear();
-        lineNumberMap.clear();
-        return preprocess(source, 0);
+    public CopybookResolver getCopybookResolver() {
+        return copybookResolver;
+    }
+
+    /**
+     * Expands the COPY statements of one file.
+     * @param source The COBOL source
+     * @return The per-file context holding the expanded text, included copybooks and line map
+     * @throws IOException If preprocessing fails
+     */
+    public PreprocessingContext preprocess(CharSequence source) throws IOException {
+        if (preprocessCache != null) {
+            PreprocessingContext cached = preprocessCache.load(source, copybookResolver);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        PreprocessingContext context = new PreprocessingContext();
+        ExpandedText text = new ExpandedText(source.length() + 1024);
+        preprocess(source, 0, context, text);
+        context.setText(text.build());
+        if (preprocessCache != null && context.isCacheable()) {
+            preprocessCache.store(source, context);
+        }
+        return context;
     }
 
-    private String preprocess(String source, int depth) throws IOException {
+    /**
+     * Appends the expansion of a source to {@code result}. Lines are scanned in place and split
+     * like {@code source.split("\\r?\\n")}: at LF or CRLF, dropping trailing empty lines.
+     */
+    private void preprocess(CharSequence source, int depth, PreprocessingContext context, ExpandedText result) throws IOException {
         if (depth > MAX_DEPTH) {
-            return "*> ERROR: Maximum COPY depth exceeded\n";
+            result.append("*> ERROR: Maximum COPY depth exceeded\n");
+            return;
         }
 
-        StringBuilder result = new StringBuilder();
+        int length = source.length();
         int sourceLine = 1;
-        for (String line : source.split("\\r?\\n")) {
-            lineNumberMap.add(sourceLine++);
-            String trimmedLine = line.trim();
-
-            if (trimmedLine.toUpperCase().contains("REPLACING")) {
-                result.append("*> #unsupported_copy_replacing <").append(trimmedLine).append(">\n");
-                continue;
+        int emptyLines = 0; // held back until a non-empty line follows
+        int lineStart = 0;
+        while (true) {
+            int newline = indexOf(source, '\n', lineStart);
+            int lineEnd = newline < 0 ? length : newline;
+            if (newline >= 0 && lineEnd > lineStart && source.charAt(lineEnd - 1) == '\r') {
+                lineEnd--;
             }
+            if (lineEnd == lineStart && length > 0) {
+                emptyLines++;
+            } else {
+                for (; emptyLines > 0; emptyLines--) {
+                    context.getLineNumberMap().add(sourceLine++);
+                    result.append("\n");
+                }
+                context.getLineNumberMap().add(sourceLine++);
+                int trimStart = lineStart;
+                int trimEnd = lineEnd;
+                while (trimStart < trimEnd && source.charAt(trimStart) <= ' ') trimStart++;
+                while (trimEnd > trimStart && source.charAt(trimEnd - 1) <= ' ') trimEnd--;
 
-            if (trimmedLine.toUpperCase().startsWith("COPY")) {
-                String[] parts = trimmedLine.split("\\s+");
-                if (parts.length >= 2) {
-                    String rawName = parts[1].replace(".", "");
-                    String matchedCopybook = findCopybook(rawName);
-                    if (matchedCopybook != null) {
-                        if (visitedCopybooks.contains(matchedCopybook)) {
-                            result.append("*> #circular_copy <").append(matchedCopybook).append(">\n");
-                        } else {
-                            visitedCopybooks.add(matchedCopybook);
-                            String copyContent = copybookCache.computeIfAbsent(matchedCopybook, k -> {
-                                try {
-                                    Path copyPath = includeDir.resolve(matchedCopybook);
-                                    return new String(Files.readAllBytes(copyPath), StandardCharsets.UTF_8);
-                                } catch (IOException e) {
-                                    return null;
-                                }
-                            });
-                            if (copyContent != null) {
-                                result.append("*> #include <").append(matchedCopybook).append("> line ").append(sourceLine).append("\n");
-                                result.append(preprocess(copyContent, depth + 1)).append("\n");
-                                result.append("*> #endinclude <").append(matchedCopybook).append(">\n");
-                            } else {
-                                result.append("*> #error_reading_copy <").append(matchedCopybook).append(">\n");
-                            }
-                        }
-                    } else {
-                        result.append("*> #missing_copy <").append(rawName).append(".*>\n");
-                    }
+                if (indexOfIgnoreCase(source, trimStart, trimEnd, "REPLACING") >= 0) {
+                    result.append("*> #unsupported_copy_replacing <").append(source, trimStart, trimEnd).append(">\n");
+                } else if (indexOfIgnoreCase(source, trimStart, Math.min(trimEnd, trimStart + 4), "COPY") == trimStart) {
+                    expandCopy(source.subSequence(trimStart, trimEnd).toString(), sourceLine, depth, context, result);
+                } else {
+                    result.append(source, lineStart, lineEnd).append("\n");
                 }
-            } else {
-                result.append(line).append("\n");
             }
+            if (newline < 0) break;
+            lineStart = newline + 1;
         }
+    }
 
-        return result.toString();
+    private void expandCopy(String trimmedLine, int sourceLine, int depth, PreprocessingContext context, ExpandedText result) throws IOException {
+        String[] parts = trimmedLine.split("\\s+");
+        if (parts.length < 2) return;
+        String rawName = parts[1].replace(".", "");
+        Path copyPath = copybookResolver.resolve(rawName);
+        context.recordResolution(rawName, copyPath);
+        if (copyPath == null) {
+            result.append("*> #missing_copy <").append(rawName).append(".*>\n");
+            return;
+        }
+        String matchedCopybook = copyPath.getFileName().toString();
+        if (context.getVisitedCopybooks().contains(matchedCopybook)) {
+            result.append("*> #circular_copy <").append(matchedCopybook).append(">\n");
+            return;
+        }
+        context.getVisitedCopybooks().add(matchedCopybook);
+        String copyContent;
+        try {
+            copyContent = copybookStore.get(copyPath);
+        } catch (IOException e) {
+            copyContent = null;
+        }
+        if (copyContent != null) {
+            result.append("*> #include <").append(matchedCopybook).append("> line ").append(Integer.toString(sourceLine)).append("\n");
+            preprocess(copyContent, depth + 1, context, result);
+            result.append("\n");
+            result.append("*> #endinclude <").append(matchedCopybook).append(">\n");
+        } else {
+            context.markUncacheable();
+            result.append("*> #error_reading_copy <").append(matchedCopybook).append(">\n");
+        }
     }
 
-    private String findCopybook(String baseName) {
-        for (String ext : COPY_EXTENSIONS) {
-            String candidate = baseName + ext;
-            if (copybookCache.containsKey(candidate) || Files.exists(includeDir.resolve(candidate))) {
-                return candidate;
-            }
+    private static int indexOf(CharSequence text, char c, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == c) return i;
         }
-        return null;
+        return -1;
     }
 
-    public Set<String> getVisitedCopybooks() {
-        return visitedCopybooks;
+    /**
+     * Finds an upper-case word in a region, comparing the region's characters upper-cased as
+     * {@code toUpperCase().contains(word)} would, without creating strings.
+     */
+    private static int indexOfIgnoreCase(CharSequence text, int start, int end, String word) {
+        for (int i = start; i + word.length() <= end; i++) {
+            int j = 0;
+            while (j < word.length() && Character.toUpperCase(text.charAt(i + j)) == word.charAt(j)) j++;
+            if (j == word.length()) return i;
+        }
+        return -1;
     }
 
-    public List<Integer> getLineNumberMap() {
-        return lineNumberMap;
+    /**
+     * The expanded text of a file, written straight into the code point buffer the lexer reads.
+     * Slices of an array-backed source are appended without copying them first; other text goes
+     * through a small staging buffer.
+     */
+    private static class ExpandedText {
+        private final CodePointBuffer.Builder builder;
+        private final CharBuffer staging = CharBuffer.allocate(4096);
+        private CharBuffer view;
+        private CharBuffer viewSource;
+
+        ExpandedText(int initialSize) {
+            builder = CodePointBuffer.builder(initialSize);
+        }
+
+        ExpandedText append(CharSequence text) {
+            return append(text, 0, text.length());
+        }
+
+        ExpandedText append(CharSequence text, int start, int end) {
+            if (text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+                CharBuffer source = (CharBuffer) text;
+                if (viewSource != source) {
+                    view = source.duplicate();
+                    viewSource = source;
+                }
+                int base = source.position();
+                view.limit(base + end);
+                view.position(base + start);
+                builder.append(view);
+                return this;
+            }
+            for (int i = start; i < end; ) {
+                int n = Math.min(end - i, staging.capacity());
+                staging.clear();
+                if (text instanceof String) {
+                    ((String) text).getChars(i, i + n, staging.array(), 0);
+                } else {
+                    for (int k = 0; k < n; k++) staging.put(k, text.charAt(i + k));
+                }
+                staging.limit(n);
+                builder.append(staging);
+                i += n;
+            }
+            return this;
+        }
+
+        CodePointBuffer build() {
+            return builder.build();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,199 @@
+package cobol;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Token factory that records every token a lexer emits in primitive arrays instead of one
+ * {@link CommonToken} object per token: type, channel, start and stop offsets, line and column,
+ * about 21 bytes per token. The tokens it returns are views holding only their index; their
+ * text is read from the lexer's input when asked for, so a token never holds a copy of it.
+ * One factory records the tokens of one input, in emission order, so a token's index in the
+ * factory is its index in the token stream.
+ */
+public class CompactTokenFactory implements TokenFactory<Token> {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private TokenSource source;
+    private CharStream input;
+    private int size;
+    private int[] types = new int[INITIAL_CAPACITY];
+    private byte[] channels = new byte[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] stops = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] columns = new int[INITIAL_CAPACITY];
+    private Map<Integer, String> texts; // only for tokens whose text was set by a lexer action
+
+    @Override
+    public Token create(Pair<TokenSource, CharStream> source, int type, String text, int channel,
+                        int start, int stop, int line, int charPositionInLine) {
+        if (size == types.length) {
+            grow(size * 2);
+        }
+        if (this.source == null) {
+            this.source = source.a;
+            this.input = source.b;
+        }
+        types[size] = type;
+        channels[size] = (byte) channel;
+        starts[size] = start;
+        stops[size] = stop;
+        lines[size] = line;
+        columns[size] = charPositionInLine;
+        if (text != null) {
+            if (texts == null) texts = new HashMap<>();
+            texts.put(size, text);
+        }
+        return new CompactToken(size++);
+    }
+
+    @Override
+    public Token create(int type, String text) {
+        return new CommonToken(type, text);
+    }
+
+    /**
+     * Releases the spare capacity once the lexer has emitted the last token.
+     */
+    void trim() {
+        grow(size);
+    }
+
+    private void grow(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        channels = Arrays.copyOf(channels, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        stops = Arrays.copyOf(stops, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getType(int index) {
+        return types[index];
+    }
+
+    int getChannel(int index) {
+        return channels[index];
+    }
+
+    TokenSource getTokenSource() {
+        return source;
+    }
+
+    Token get(int index) {
+        return new CompactToken(index);
+    }
+
+    /**
+     * Gets the text of a token without creating a token view.
+     * @param index The token index
+     * @return The text, or {@code <EOF>} for the end-of-file token
+     */
+    String getText(int index) {
+        if (texts != null) {
+            String text = texts.get(index);
+            if (text != null) return text;
+        }
+        int n = input.size();
+        if (starts[index] < n && stops[index] < n) {
+            return input.getText(Interval.of(starts[index], stops[index]));
+        }
+        return "<EOF>";
+    }
+
+    /**
+     * A token as an index into the factory's arrays.
+     */
+    private final class CompactToken implements Token {
+        private final int index;
+
+        CompactToken(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getText() {
+            return CompactTokenFactory.this.getText(index);
+        }
+
+        @Override
+        public int getType() {
+            return types[index];
+        }
+
+        @Override
+        public int getLine() {
+            return lines[index];
+        }
+
+        @Override
+        public int getCharPositionInLine() {
+            return columns[index];
+        }
+
+        @Override
+        public int getChannel() {
+            return channels[index];
+        }
+
+        @Override
+        public int getTokenIndex() {
+            return index;
+        }
+
+        @Override
+        public int getStartIndex() {
+            return starts[index];
+        }
+
+        @Override
+        public int getStopIndex() {
+            return stops[index];
+        }
+
+        @Override
+        public TokenSource getTokenSource() {
+            return source;
+        }
+
+        @Override
+        public CharStream getInputStream() {
+            return input;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CompactToken && ((CompactToken) o).index == index && ((CompactToken) o).factory() == CompactTokenFactory.this;
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+
+        private CompactTokenFactory factory() {
+            return CompactTokenFactory.this;
+        }
+
+        @Override
+        public String toString() {
+            String text = getText().replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+            return "[@" + index + "," + getStartIndex() + ":" + getStopIndex() + "='" + text + "',<" + getType() + ">"
+                    + (getChannel() > 0 ? ",channel=" + getChannel() : "") + "," + getLine() + ":" + getCharPositionInLine() + "]";
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package cobol;
+
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Token stream over the tokens recorded by a {@link CompactTokenFactory}. It behaves like a
+ * filled {@link org.antlr.v4.runtime.CommonTokenStream}: the parser sees only default-channel
+ * tokens, while {@link #getText(RuleContext)} includes the hidden whitespace and comments between
+ * them. Lookahead by type reads the arrays directly; token views are created only for the tokens
+ * the parser actually takes. Like {@link CancellableTokenStream}, {@link #consume()} stops when
+ * the parsing thread is interrupted, and so does {@link #tokenize(Lexer)}.
+ */
+public class CompactTokenStream implements TokenStream {
+    private final TokenSource tokenSource;
+    private final CompactTokenFactory tokens;
+    private final Token[] recent = new Token[4]; // views handed out lately; LT(1) is asked for several times per token
+    private int p = -1;
+
+    private CompactTokenStream(TokenSource tokenSource, CompactTokenFactory tokens) {
+        this.tokenSource = tokenSource;
+        this.tokens = tokens;
+    }
+
+    /**
+     * Runs the lexer over its whole input, recording the tokens compactly. The lexer's previous
+     * token factory is restored afterwards.
+     * @param lexer Lexer positioned at the start of its input
+     * @return The token stream
+     * @throws CancellationException If the thread is interrupted while lexing
+     */
+    public static CompactTokenStream tokenize(Lexer lexer) {
+        TokenFactory<?> previous = lexer.getTokenFactory();
+        CompactTokenFactory factory = new CompactTokenFactory();
+        lexer.setTokenFactory(factory);
+        try {
+            int count = 0;
+            while (lexer.nextToken().getType() != Token.EOF) {
+                // recorded by the factory
+                if ((++count & 4095) == 0 && Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Lexing cancelled");
+                }
+            }
+        } finally {
+            lexer.setTokenFactory(previous != null ? previous : CommonTokenFactory.DEFAULT);
+        }
+        factory.trim();
+        return new CompactTokenStream(lexer, factory);
+    }
+
+    @Override
+    public Token LT(int k) {
+        int index = lookahead(k);
+        return index < 0 ? null : get(index);
+    }
+
+    @Override
+    public int LA(int i) {
+        int index = lookahead(i);
+        return index < 0 ? Token.INVALID_TYPE : tokens.getType(index);
+    }
+
+    /**
+     * Finds the k-th default-channel token from the current position, backwards for negative k.
+     * @return The token index, or -1 if there is none
+     */
+    private int lookahead(int k) {
+        setup();
+        if (k == 0) return -1;
+        int index = p;
+        if (k > 0) {
+            for (int n = 1; n < k; n++) {
+                index = nextOnChannel(index + 1);
+            }
+            return index;
+        }
+        for (int n = 1; n <= -k && index >= 0; n++) {
+            index = previousOnChannel(index - 1);
+        }
+        return index;
+    }
+
+    @Override
+    public Token get(int index) {
+        if (index < 0 || index >= tokens.size()) {
+            throw new IndexOutOfBoundsException("token index " + index + " out of range 0.." + (tokens.size() - 1));
+        }
+        int slot = index & (recent.length - 1);
+        Token token = recent[slot];
+        if (token == null || token.getTokenIndex() != index) {
+            token = tokens.get(index);
+            recent[slot] = token;
+        }
+        return token;
+    }
+
+    @Override
+    public void consume() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Parse cancelled");
+        }
+        setup();
+        if (tokens.getType(p) == Token.EOF) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        p = nextOnChannel(p + 1);
+    }
+
+    @Override
+    public int index() {
+        return p;
+    }
+
+    @Override
+    public void seek(int index) {
+        setup();
+        p = nextOnChannel(index);
+    }
+
+    @Override
+    public int mark() {
+        return 0;
+    }
+
+    @Override
+    public void release(int marker) {
+        // all tokens stay buffered
+    }
+
+    @Override
+    public int size() {
+        return tokens.size();
+    }
+
+    @Override
+    public String getSourceName() {
+        return tokenSource.getSourceName();
+    }
+
+    @Override
+    public TokenSource getTokenSource() {
+        return tokenSource;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = interval.a;
+        int stop = Math.min(interval.b, tokens.size() - 1);
+        if (start < 0 || stop < 0) return "";
+        StringBuilder text = new StringBuilder();
+        for (int i = start; i <= stop && tokens.getType(i) != Token.EOF; i++) {
+            text.append(tokens.getText(i));
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String getText() {
+        return getText(Interval.of(0, tokens.size() - 1));
+    }
+
+    @Override
+    public String getText(RuleContext ctx) {
+        return getText(ctx.getSourceInterval());
+    }
+
+    @Override
+    public String getText(Token start, Token stop) {
+        if (start == null || stop == null) return "";
+        return getText(Interval.of(start.getTokenIndex(), stop.getTokenIndex()));
+    }
+
+    private void setup() {
+        if (p == -1) {
+            p = nextOnChannel(0);
+        }
+    }
+
+    private int nextOnChannel(int i) {
+        if (i >= tokens.size()) return tokens.size() - 1;
+        while (tokens.getChannel(i) != Token.DEFAULT_CHANNEL && tokens.getType(i) != Token.EOF) {
+            i++;
+        }
+        return i;
+    }
+
+    private int previousOnChannel(int i) {
+        if (i >= tokens.size()) return tokens.size() - 1;
+        while (i >= 0 && tokens.getChannel(i) != Token.DEFAULT_CHANNEL && tokens.getType(i) != Token.EOF) {
+            i--;
+        }
+        return i;
+    }
+}
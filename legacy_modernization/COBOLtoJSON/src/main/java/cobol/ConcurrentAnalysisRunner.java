@@ -0,0 +1,124 @@
+package cobol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs independent analysis passes concurrently over one parsed program on a fork-join pool.
+ * The trees and token streams are fully built before any pass starts and are only read by
+ * the passes, so they can be shared. A pass starts only after the passes it depends on
+ * have finished, and {@link #run} returns once every pass is done. If the waiting thread is
+ * interrupted, the passes are stopped as well.
+ */
+public class ConcurrentAnalysisRunner {
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * A registered analysis and the passes that must finish before it starts.
+     */
+    public static class Pass {
+        private final AnalysisVisitor analysis;
+        private final List<Pass> dependencies;
+
+        private Pass(AnalysisVisitor analysis, List<Pass> dependencies) {
+            this.analysis = analysis;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private final List<Pass> passes = new ArrayList<>();
+
+    /**
+     * Gets the fork-join pool shared by the in-file parallel work.
+     * @return The shared pool
+     */
+    static ForkJoinPool pool() {
+        return POOL;
+    }
+
+    /**
+     * Registers an analysis pass. Dependencies must already be registered, so the
+     * registration order is always a valid execution order.
+     * @param analysis The analysis to run
+     * @param dependsOn Passes that must finish first
+     * @return The registered pass, for use as a dependency of later passes
+     */
+    public Pass add(AnalysisVisitor analysis, Pass... dependsOn) {
+        for (Pass dependency : dependsOn) {
+            if (!passes.contains(dependency)) {
+                throw new IllegalArgumentException("Dependency must be registered before the pass that uses it");
+            }
+        }
+        Pass pass = new Pass(analysis, Arrays.asList(dependsOn));
+        passes.add(pass);
+        return pass;
+    }
+
+    /**
+     * Runs all registered passes and waits for them to finish.
+     * @param segments The parsed program shared by all passes
+     * @throws InterruptedException If interrupted while waiting for the passes
+     */
+    public void run(List<ParseSegment> segments) throws InterruptedException {
+        // Pool threads are not interrupted by a timeout, so running passes watch this flag instead
+        AtomicBoolean stopped = new AtomicBoolean();
+        Map<Pass, ForkJoinTask<Void>> tasks = new LinkedHashMap<>();
+        for (Pass pass : passes) {
+            List<ForkJoinTask<Void>> dependencies = new ArrayList<>();
+            for (Pass dependency : pass.dependencies) {
+                dependencies.add(tasks.get(dependency));
+            }
+            tasks.put(pass, new PassTask(pass.analysis, dependencies, segments, stopped));
+        }
+
+        ForkJoinTask<Void> all = POOL.submit(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks.values());
+            }
+        });
+        try {
+            all.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) throw (Error) cause;
+            throw (RuntimeException) cause; // compute() throws no checked exceptions
+        } finally {
+            if (!all.isDone()) {
+                stopped.set(true);
+            }
+        }
+    }
+
+    @SuppressWarnings("serial") // never serialized
+    private static class PassTask extends RecursiveAction {
+        private final AnalysisVisitor analysis;
+        private final List<ForkJoinTask<Void>> dependencies;
+        private final List<ParseSegment> segments;
+        private final AtomicBoolean stopped;
+
+        PassTask(AnalysisVisitor analysis, List<ForkJoinTask<Void>> dependencies, List<ParseSegment> segments, AtomicBoolean stopped) {
+            this.analysis = analysis;
+            this.dependencies = dependencies;
+            this.segments = segments;
+            this.stopped = stopped;
+        }
+
+        @Override
+        protected void compute() {
+            for (ForkJoinTask<Void> dependency : dependencies) {
+                dependency.join();
+            }
+            new FusedTreeWalker(Collections.singletonList(analysis), stopped::get).walk(segments);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package cobol;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 content hashes used to key caches and manifests.
+ */
+public class ContentHash {
+
+    /**
+     * Hashes a byte array.
+     * @param data The data to hash
+     * @return Lowercase hex SHA-256 digest
+     */
+    public static String of(byte[] data) {
+        MessageDigest digest = sha256();
+        digest.update(data);
+        return hex(digest.digest());
+    }
+
+    /**
+     * Hashes the remaining bytes of a buffer, e.g. a memory-mapped file, without copying them.
+     * @param data The data to hash; its position is not changed
+     * @return Lowercase hex SHA-256 digest
+     */
+    public static String of(ByteBuffer data) {
+        MessageDigest digest = sha256();
+        digest.update(data.duplicate());
+        return hex(digest.digest());
+    }
+
+    /**
+     * Hashes the UTF-8 encoding of a string.
+     * @param text The text to hash
+     * @return Lowercase hex SHA-256 digest
+     */
+    public static String of(String text) {
+        return of(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hashes the UTF-8 encoding of text, encoding it in small chunks; the digest equals
+     * {@link #of(String)} of the same characters.
+     * @param text The text to hash
+     * @return Lowercase hex SHA-256 digest
+     */
+    public static String of(CharSequence text) {
+        if (text instanceof String) return of((String) text);
+        MessageDigest digest = sha256();
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer in = CharBuffer.wrap(text);
+        ByteBuffer out = ByteBuffer.allocate(8192);
+        boolean flushed = false;
+        while (!flushed) {
+            CoderResult result = encoder.encode(in, out, true);
+            if (result.isUnderflow()) {
+                flushed = encoder.flush(out).isUnderflow();
+            }
+            out.flip();
+            digest.update(out);
+            out.clear();
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
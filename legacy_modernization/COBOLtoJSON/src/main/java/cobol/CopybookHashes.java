@@ -0,0 +1,56 @@
+package cobol;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content hashes of copybooks, computed once per run from the shared {@link CopybookStore}.
+ * Used to decide whether results derived from a copybook are still valid.
+ */
+public class CopybookHashes {
+    private final CopybookStore copybookStore;
+    private final Map<Path, String> hashes = new ConcurrentHashMap<>();
+
+    public CopybookHashes(CopybookStore copybookStore) {
+        this.copybookStore = copybookStore;
+    }
+
+    /**
+     * Gets the content hash of a copybook.
+     * @param path The copybook file
+     * @return Hex SHA-256 of the copybook text
+     * @throws IOException If the copybook cannot be read
+     */
+    public String get(Path path) throws IOException {
+        String hash = hashes.get(path);
+        if (hash == null) {
+            hash = ContentHash.of(copybookStore.get(path));
+            hashes.put(path, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Checks that COPY names still resolve to the same copybooks with the same contents.
+     * @param resolutions Map from COPY name to the recorded {path, hash} pair; empty strings mean the name was missing
+     * @param resolver The current copybook resolver
+     * @return true if every name resolves as recorded
+     */
+    public boolean unchanged(Map<String, String[]> resolutions, CopybookResolver resolver) {
+        try {
+            for (Map.Entry<String, String[]> resolution : resolutions.entrySet()) {
+                Path resolved = resolver.resolve(resolution.getKey());
+                String path = resolved == null ? "" : resolved.toString();
+                String hash = resolved == null ? "" : get(resolved);
+                if (!path.equals(resolution.getValue()[0]) || !hash.equals(resolution.getValue()[1])) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package cobol;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+/**
+ * Resolves COPY names to copybook files through an in-memory index of the include directories,
+ * so a COPY statement costs a map lookup instead of one filesystem stat per extension.
+ * Search paths are consulted in priority order, each with its own extension list; the first
+ * match wins, exactly as probing the paths one by one would. The index is rebuilt when the
+ * modification time of any include directory changes, checked at most once per refresh interval.
+ */
+public class CopybookResolver {
+    public static final List<String> DEFAULT_EXTENSIONS = Collections.unmodifiableList(Arrays.asList(".cpy", ".cob", ".inc"));
+
+    /**
+     * An include directory and the extensions to try in it, in order.
+     */
+    public static class SearchPath {
+        public final Path dir;
+        public final List<String> extensions;
+
+        public SearchPath(Path dir, List<String> extensions) {
+            this.dir = dir;
+            this.extensions = new ArrayList<>(extensions);
+        }
+    }
+
+    private final List<SearchPath> searchPaths;
+    private final long refreshIntervalMillis;
+    private volatile Map<String, Path> index = Collections.emptyMap();
+    private volatile List<FileTime> indexedTimes = Collections.emptyList();
+    private volatile long lastCheckMillis;
+
+    public CopybookResolver(Path includeDir) {
+        this(Collections.singletonList(new SearchPath(includeDir, DEFAULT_EXTENSIONS)), 2000);
+    }
+
+    /**
+     * @param searchPaths Include directories in priority order
+     * @param refreshIntervalMillis Minimum time between checks for changed directories
+     */
+    public CopybookResolver(List<SearchPath> searchPaths, long refreshIntervalMillis) {
+        this.searchPaths = new ArrayList<>(searchPaths);
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        rebuild();
+    }
+
+    public List<SearchPath> getSearchPaths() {
+        return Collections.unmodifiableList(searchPaths);
+    }
+
+    /**
+     * Resolves a COPY name to a copybook file.
+     * @param baseName The name from the COPY statement, without extension
+     * @return The copybook file, or null if no search path has it
+     */
+    public Path resolve(String baseName) {
+        refreshIfChanged();
+        return index.get(baseName);
+    }
+
+    private void refreshIfChanged() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheckMillis < refreshIntervalMillis) return;
+        lastCheckMillis = now;
+        if (!directoryTimes().equals(indexedTimes)) {
+            rebuild();
+        }
+    }
+
+    private synchronized void rebuild() {
+        List<FileTime> times = directoryTimes();
+        Map<String, Path> newIndex = new HashMap<>();
+        for (SearchPath searchPath : searchPaths) {
+            Set<String> fileNames = listFileNames(searchPath.dir);
+            Map<String, Path> pathMatches = new HashMap<>();
+            for (String fileName : fileNames) {
+                for (String ext : searchPath.extensions) {
+                    if (fileName.endsWith(ext) && fileName.length() > ext.length()) {
+                        String baseName = fileName.substring(0, fileName.length() - ext.length());
+                        Path current = pathMatches.get(baseName);
+                        if (current == null || rank(searchPath, fileName) < rank(searchPath, current.getFileName().toString())) {
+                            pathMatches.put(baseName, searchPath.dir.resolve(fileName));
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, Path> match : pathMatches.entrySet()) {
+                newIndex.putIfAbsent(match.getKey(), match.getValue());
+            }
+        }
+        index = newIndex;
+        indexedTimes = times;
+        lastCheckMillis = System.currentTimeMillis();
+    }
+
+    private static int rank(SearchPath searchPath, String fileName) {
+        for (int i = 0; i < searchPath.extensions.size(); i++) {
+            if (fileName.endsWith(searchPath.extensions.get(i))) return i;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    private static Set<String> listFileNames(Path dir) {
+        Set<String> names = new HashSet<>();
+        if (!Files.isDirectory(dir)) return names;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                names.add(entry.getFileName().toString());
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot list include directory " + dir + ": " + e.getMessage());
+        }
+        return names;
+    }
+
+    private List<FileTime> directoryTimes() {
+        List<FileTime> times = new ArrayList<>();
+        for (SearchPath searchPath : searchPaths) {
+            try {
+                times.add(Files.getLastModifiedTime(searchPath.dir));
+            } catch (IOException e) {
+                times.add(FileTime.fromMillis(0));
+            }
+        }
+        return times;
+    }
+}
@@ -0,0 +1,128 @@
+package cobol;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copybook contents shared by all worker threads of a run. The store is bounded by a byte
+ * budget and evicts the least recently used copybooks first. Concurrent requests for a
+ * copybook that is not yet loaded share one disk read. A long-lived store can check the
+ * modification time of a copybook on every access so that edited copybooks are reloaded.
+ */
+public class CopybookStore {
+    private final long budgetBytes;
+    private final boolean checkModified;
+    private final LinkedHashMap<Path, String> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Path, FileTime> modifiedTimes = new HashMap<>();
+    private final Map<Path, FutureTask<String>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong diskReads = new AtomicLong();
+    private long sizeBytes;
+
+    /**
+     * @param budgetBytes Maximum memory held by cached copybook text; 0 disables caching
+     */
+    public CopybookStore(long budgetBytes) {
+        this(budgetBytes, false);
+    }
+
+    /**
+     * @param budgetBytes Maximum memory held by cached copybook text; 0 disables caching
+     * @param checkModified Whether to reload a cached copybook whose modification time changed
+     */
+    public CopybookStore(long budgetBytes, boolean checkModified) {
+        this.budgetBytes = budgetBytes;
+        this.checkModified = checkModified;
+    }
+
+    /**
+     * Gets the contents of a copybook, reading it from disk if it is not cached.
+     * @param path The copybook file
+     * @return The copybook text
+     * @throws IOException If the copybook cannot be read
+     */
+    public String get(Path path) throws IOException {
+        FileTime modified = checkModified ? Files.getLastModifiedTime(path) : null;
+        synchronized (entries) {
+            String cached = entries.get(path);
+            if (cached != null && (modified == null || modified.equals(modifiedTimes.get(path)))) return cached;
+        }
+
+        FutureTask<String> task = new FutureTask<>(() -> {
+            diskReads.incrementAndGet();
+            return SourceFiles.read(path);
+        });
+        FutureTask<String> inFlight = loading.putIfAbsent(path, task);
+        if (inFlight == null) {
+            inFlight = task;
+            try {
+                task.run();
+                put(path, task.get(), modified);
+            } catch (ExecutionException | InterruptedException e) {
+                // reported to every waiting caller below
+            } finally {
+                loading.remove(path, task);
+            }
+        }
+
+        try {
+            return inFlight.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + path, e);
+        }
+    }
+
+    /**
+     * Checks whether a copybook is currently cached.
+     * @param path The copybook file
+     * @return true if its contents are in memory
+     */
+    public boolean contains(Path path) {
+        synchronized (entries) {
+            return entries.containsKey(path);
+        }
+    }
+
+    /**
+     * Gets the number of copybook files read from disk so far.
+     * @return Disk read count
+     */
+    public long getDiskReads() {
+        return diskReads.get();
+    }
+
+    private void put(Path path, String content, FileTime modified) {
+        long size = sizeOf(content);
+        if (size > budgetBytes) return;
+        synchronized (entries) {
+            String previous = entries.put(path, content);
+            if (previous != null) sizeBytes -= sizeOf(previous);
+            sizeBytes += size;
+            if (modified != null) modifiedTimes.put(path, modified);
+            Iterator<Map.Entry<Path, String>> eldest = entries.entrySet().iterator();
+            while (sizeBytes > budgetBytes && eldest.hasNext()) {
+                Map.Entry<Path, String> entry = eldest.next();
+                sizeBytes -= sizeOf(entry.getValue());
+                modifiedTimes.remove(entry.getKey());
+                eldest.remove();
+            }
+        }
+    }
+
+    private static long sizeOf(String content) {
+        return 2L * content.length();
+    }
+}
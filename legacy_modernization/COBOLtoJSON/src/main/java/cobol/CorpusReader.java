@@ -0,0 +1,155 @@
+package cobol;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Fetches single program records from the NDJSON shards written by {@link CorpusWriter}.
+ * The index is read once; each fetch then reads only the byte range of its record, inflating
+ * it if the shard is compressed.
+ * <p>
+ * Run with the index and file names or program ids to print their records:
+ * {@code java -cp cobol-json-parser.jar cobol.CorpusReader out/parsed_corpus-index.ndjson PAYROLL.cbl}.
+ */
+public class CorpusReader {
+    private final Path directory;
+    private final Map<String, Entry> byFile = new LinkedHashMap<>();
+    private final Map<String, Entry> byProgramId = new HashMap<>();
+
+    private static class Entry {
+        final String shard;
+        final long offset;
+        final int length;
+
+        Entry(String shard, long offset, int length) {
+            this.shard = shard;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Loads a corpus index; the shards are expected next to it.
+     * @param index The {@code corpus-index.ndjson} file
+     * @throws IOException If the index cannot be read or is malformed
+     */
+    public CorpusReader(Path index) throws IOException {
+        this.directory = index.toAbsolutePath().getParent();
+        JSONParser parser = new JSONParser();
+        try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                JSONObject json = (JSONObject) parser.parse(line);
+                Entry entry = new Entry((String) json.get("shard"), ((Number) json.get("offset")).longValue(),
+                        ((Number) json.get("length")).intValue());
+                byFile.put((String) json.get("file"), entry);
+                byProgramId.putIfAbsent((String) json.get("programId"), entry);
+            }
+        } catch (ParseException | ClassCastException | NullPointerException e) {
+            throw new IOException("Malformed corpus index " + index + ": " + e, e);
+        }
+    }
+
+    /**
+     * Gets the source file names in the corpus, in the order they were written.
+     * @return The file names
+     */
+    public Set<String> getFiles() {
+        return Collections.unmodifiableSet(byFile.keySet());
+    }
+
+    /**
+     * Reads the record of one program as its NDJSON line.
+     * @param fileOrProgramId Source file name, such as {@code PAYROLL.cbl}, or program id
+     * @return The record without its line break, or null if the corpus has no such program
+     * @throws IOException If the shard cannot be read
+     */
+    public String readLine(String fileOrProgramId) throws IOException {
+        Entry entry = byFile.get(fileOrProgramId);
+        if (entry == null) entry = byProgramId.get(fileOrProgramId);
+        if (entry == null) return null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+        try (FileChannel channel = FileChannel.open(directory.resolve(entry.shard), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.offset + buffer.position()) < 0) {
+                    throw new IOException("Corpus shard " + entry.shard + " is truncated");
+                }
+            }
+        }
+        byte[] record = buffer.array();
+        if (entry.shard.endsWith(".gz")) {
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream(record.length * 4);
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(record))) {
+                byte[] chunk = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(chunk)) > 0) {
+                    inflated.write(chunk, 0, n);
+                }
+            }
+            record = inflated.toByteArray();
+        }
+        int length = record.length;
+        if (length > 0 && record[length - 1] == '\n') length--;
+        return new String(record, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads and parses the record of one program.
+     * @param fileOrProgramId Source file name or program id
+     * @return The record with "file", "programId", "output", "callGraphMermaid" and "dataFlowMermaid",
+     *         or null if the corpus has no such program
+     * @throws IOException If the shard cannot be read or the record is malformed
+     */
+    public JSONObject read(String fileOrProgramId) throws IOException {
+        String line = readLine(fileOrProgramId);
+        if (line == null) return null;
+        try {
+            return (JSONObject) new JSONParser().parse(line);
+        } catch (ParseException e) {
+            throw new IOException("Malformed corpus record " + fileOrProgramId + ": " + e, e);
+        }
+    }
+
+    /**
+     * Prints records of a corpus.
+     * @param args The index file, then the file names or program ids to print
+     * @throws IOException If the corpus cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java cobol.CorpusReader <corpus-index.ndjson> <file_or_program_id>...");
+            System.exit(1);
+        }
+        CorpusReader reader = new CorpusReader(Paths.get(args[0]));
+        for (int i = 1; i < args.length; i++) {
+            String line = reader.readLine(args[i]);
+            if (line == null) {
+                System.err.println("Not in corpus: " + args[i]);
+            } else {
+                System.out.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package cobol;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the outputs of a whole corpus as NDJSON shards instead of three files per program.
+ * Each program becomes one line, {@code {"file": ..., "programId": ..., "output": {...},
+ * "callGraphMermaid": ..., "dataFlowMermaid": ...}}, appended to {@code <prefix>corpus-00000.ndjson};
+ * a new shard is started once a shard reaches the configured size. Fields of sections left out
+ * of the {@link OutputSections} selection are omitted.
+ * <p>
+ * With compression, every record is its own gzip member. A shard is then still an ordinary
+ * {@code .ndjson.gz} file for {@code zcat}, and one record can be inflated on its own.
+ * <p>
+ * Every record gets a line in {@code <prefix>corpus-index.ndjson},
+ * {@code {"file": ..., "programId": ..., "shard": ..., "offset": ..., "length": ...}}, giving
+ * the byte range of the record (or its gzip member) in the shard; see {@link CorpusReader}.
+ * Records are serialized and compressed by the calling thread, so only the append is serialized.
+ */
+public class CorpusWriter implements Closeable {
+    static final String INDEX_SUFFIX = "corpus-index.ndjson";
+
+    private final Path outputDir;
+    private final String prefix;
+    private final long shardBytes;
+    private final boolean gzip;
+    private final BufferedWriter index;
+    private FileChannel shard;
+    private String shardName;
+    private long shardSize;
+    private int shardCount;
+    private int records;
+
+    /**
+     * Starts a corpus in the output directory, removing the shards of a previous run.
+     * @param outputDir Output directory path
+     * @param prefix Prefix of the shard and index file names
+     * @param shardBytes Size after which a new shard is started
+     * @param gzip Whether to compress the records
+     * @throws IOException If the index cannot be created
+     */
+    public CorpusWriter(Path outputDir, String prefix, long shardBytes, boolean gzip) throws IOException {
+        this.outputDir = outputDir;
+        this.prefix = prefix;
+        this.shardBytes = Math.max(1, shardBytes);
+        this.gzip = gzip;
+        Pattern oldShard = Pattern.compile(Pattern.quote(prefix + "corpus-") + "\\d{5}\\.ndjson(\\.gz)?");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(outputDir)) {
+            for (Path file : files) {
+                if (oldShard.matcher(file.getFileName().toString()).matches()) Files.delete(file);
+            }
+        }
+        this.index = Files.newBufferedWriter(outputDir.resolve(prefix + INDEX_SUFFIX), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends the record of one program.
+     * @param job The analyzed program
+     * @throws IOException If the record cannot be written
+     */
+    public void write(FileJob job) throws IOException {
+        String file = job.inputFile.getFileName().toString();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer out = new OutputStreamWriter(gzip ? new GZIPOutputStream(bytes, 64 * 1024) : bytes, StandardCharsets.UTF_8)) {
+            JsonStreamWriter writer = new JsonStreamWriter(out);
+            writer.beginObject()
+                    .name("file").value(file)
+                    .name("programId").value(job.programId);
+            if (job.program != null) writer.name("output").value(job.program);
+            if (job.callGraphMermaid != null) writer.name("callGraphMermaid").value(job.callGraphMermaid);
+            if (job.dataFlowMermaid != null) writer.name("dataFlowMermaid").value(job.dataFlowMermaid);
+            writer.endObject();
+            out.write('\n');
+        }
+        append(file, job.programId, bytes.toByteArray());
+    }
+
+    private synchronized void append(String file, String programId, byte[] record) throws IOException {
+        if (shard == null || (shardSize > 0 && shardSize + record.length > shardBytes)) {
+            nextShard();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            shard.write(buffer);
+        }
+
+        StringWriter entry = new StringWriter();
+        new JsonStreamWriter(entry).beginObject()
+                .name("file").value(file)
+                .name("programId").value(programId)
+                .name("shard").value(shardName)
+                .name("offset").value(shardSize)
+                .name("length").value(record.length)
+                .endObject();
+        index.write(entry.toString());
+        index.write('\n');
+        shardSize += record.length;
+        records++;
+    }
+
+    private void nextShard() throws IOException {
+        if (shard != null) shard.close();
+        shardName = String.format("%scorpus-%05d.ndjson%s", prefix, shardCount++, gzip ? ".gz" : "");
+        shard = FileChannel.open(outputDir.resolve(shardName), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        shardSize = 0;
+    }
+
+    public synchronized int getRecords() {
+        return records;
+    }
+
+    public synchronized int getShards() {
+        return shardCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            index.close();
+        } finally {
+            if (shard != null) shard.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package cobol;
+
+import java.io.IOException;
+
+/**
+ * A data description entry. Working-storage items carry the text of their definition and are
+ * written into the dictionary of their program; records of a file description carry a level
+ * number and picture and are written as {@code {"level": ..., "name": ..., "picture": ...}}.
+ */
+public class DataItem implements JsonWritable {
+    private final String name;
+    private final String level;
+    private final String picture;
+    private final String definition;
+
+    /**
+     * @param name Data name, upper case
+     * @param level Level number as written, or null
+     * @param picture PICTURE clause, or null
+     * @param definition Normalized definition text, or null
+     */
+    public DataItem(String name, String level, String picture, String definition) {
+        this.name = name.intern();
+        this.level = level;
+        this.picture = picture;
+        this.definition = definition;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public String getPicture() {
+        return picture;
+    }
+
+    public String getDefinition() {
+        return definition;
+    }
+
+    @Override
+    public void writeJson(DocumentWriter out) throws IOException {
+        out.beginObject()
+                .name("level").value(level)
+                .name("name").value(name);
+        if (picture != null) {
+            out.name("picture").value(picture);
+        }
+        out.endObject();
+    }
+}
@@ -0,0 +1,470 @@
+package cobol;
+
+import cobol.antlr.Cobol85Lexer;
+import cobol.antlr.Cobol85Parser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.RuntimeMetaData;
+import org.antlr.v4.runtime.atn.*;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves and restores the decision DFAs that ANTLR builds up while parsing. The DFAs are shared
+ * by all recognizers of the grammar, but they start out empty in every JVM, so the first files
+ * of a run are parsed mostly by slow ATN simulation. A snapshot taken after parsing a
+ * representative corpus lets a new process start with the cache already filled.
+ * <p>
+ * The snapshot holds every DFA state of the parser and lexer decisions with its ATN
+ * configurations, the prediction contexts they refer to and the edges between states, in a
+ * gzip-compressed binary file. It is tied to the grammar and ANTLR version it was taken with;
+ * restoring a snapshot of another version fails and the run starts cold instead.
+ */
+public class DfaSnapshot {
+    private static final int MAGIC = 0x43444641; // "CDFA"
+    private static final int VERSION = 1;
+    private static final int NONE = -1;
+    private static final int ERROR_STATE = -2;
+
+    private static final int EMPTY_CONTEXT = 0;
+    private static final int SINGLETON_CONTEXT = 1;
+    private static final int ARRAY_CONTEXT = 2;
+
+    /**
+     * Number of DFA states saved or restored.
+     */
+    public static class Summary {
+        public final int parserStates;
+        public final int lexerStates;
+
+        Summary(int parserStates, int lexerStates) {
+            this.parserStates = parserStates;
+            this.lexerStates = lexerStates;
+        }
+    }
+
+    /**
+     * Writes the current DFA states of the COBOL parser and lexer. Nothing may be parsing
+     * while the snapshot is taken.
+     * @param file The snapshot file; replaced atomically
+     * @return The number of states written
+     * @throws IOException If the file cannot be written or the DFAs hold states a snapshot cannot represent
+     */
+    public static Summary write(Path file) throws IOException {
+        DFA[] parserDfas = parserDfas();
+        DFA[] lexerDfas = lexerDfas();
+        Writer writer = new Writer();
+        writer.collectContexts(parserDfas);
+        writer.collectContexts(lexerDfas);
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, "dfa", ".tmp");
+        try {
+            Summary summary;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(fingerprint());
+                writer.writeContexts(out);
+                int parserStates = writer.writeDfas(out, parserDfas, null);
+                int lexerStates = writer.writeDfas(out, lexerDfas, Cobol85Lexer._ATN);
+                summary = new Summary(parserStates, lexerStates);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return summary;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Restores the DFA states of a snapshot into the shared DFAs of the COBOL parser and lexer.
+     * Decisions that already have states are left as they are. Must be called before parsing starts.
+     * @param file The snapshot file
+     * @return The number of states restored
+     * @throws IOException If the file cannot be read or was taken with another grammar or ANTLR version
+     */
+    public static Summary load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a DFA snapshot of this version");
+            }
+            if (!fingerprint().equals(in.readUTF())) {
+                throw new IOException("snapshot was taken with a different grammar or ANTLR version");
+            }
+            // Decoding from memory is much faster than through the stream while the JVM is still cold
+            Reader reader = new Reader(ByteBuffer.wrap(readRemaining(in)));
+            reader.readContexts();
+            int parserStates = reader.readDfas(parserDfas(), Cobol85Parser._ATN, false);
+            int lexerStates = reader.readDfas(lexerDfas(), Cobol85Lexer._ATN, true);
+            return new Summary(parserStates, lexerStates);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("snapshot is truncated or corrupt");
+        }
+    }
+
+    private static byte[] readRemaining(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DFA[] parserDfas() {
+        return new Cobol85Parser(null).getInterpreter().decisionToDFA;
+    }
+
+    private static DFA[] lexerDfas() {
+        return new Cobol85Lexer(CharStreams.fromString("")).getInterpreter().decisionToDFA;
+    }
+
+    private static String fingerprint() {
+        return ContentHash.of(RuntimeMetaData.VERSION + "\n" + Cobol85Lexer._serializedATN + "\n" + Cobol85Parser._serializedATN);
+    }
+
+    /**
+     * Serializes DFAs. Prediction contexts form a graph shared between configurations, so they
+     * are numbered and written first, parents before children.
+     */
+    private static class Writer {
+        private final Map<PredictionContext, Integer> contextIds = new IdentityHashMap<>();
+        private final List<PredictionContext> contexts = new ArrayList<>();
+
+        void collectContexts(DFA[] dfas) {
+            for (DFA dfa : dfas) {
+                for (DFAState state : dfa.states.keySet()) {
+                    for (ATNConfig config : state.configs) {
+                        collect(config.context);
+                    }
+                }
+            }
+        }
+
+        private void collect(PredictionContext context) {
+            if (context == null || contextIds.containsKey(context)) return;
+            if (context instanceof ArrayPredictionContext) {
+                for (PredictionContext parent : ((ArrayPredictionContext) context).parents) collect(parent);
+            } else if (context instanceof SingletonPredictionContext) {
+                collect(((SingletonPredictionContext) context).parent);
+            }
+            contextIds.put(context, contexts.size());
+            contexts.add(context);
+        }
+
+        void writeContexts(DataOutputStream out) throws IOException {
+            out.writeInt(contexts.size());
+            for (PredictionContext context : contexts) {
+                if (context == EmptyPredictionContext.Instance) {
+                    out.writeByte(EMPTY_CONTEXT);
+                } else if (context instanceof ArrayPredictionContext) {
+                    ArrayPredictionContext array = (ArrayPredictionContext) context;
+                    out.writeByte(ARRAY_CONTEXT);
+                    out.writeInt(array.parents.length);
+                    for (int i = 0; i < array.parents.length; i++) {
+                        out.writeInt(contextId(array.parents[i]));
+                        out.writeInt(array.returnStates[i]);
+                    }
+                } else {
+                    SingletonPredictionContext singleton = (SingletonPredictionContext) context;
+                    out.writeByte(SINGLETON_CONTEXT);
+                    out.writeInt(contextId(singleton.parent));
+                    out.writeInt(singleton.returnState);
+                }
+            }
+        }
+
+        private int contextId(PredictionContext context) {
+            return context == null ? NONE : contextIds.get(context);
+        }
+
+        /**
+         * @param lexerAtn The lexer ATN when writing lexer DFAs, whose states carry lexer actions; null for the parser
+         */
+        int writeDfas(DataOutputStream out, DFA[] dfas, ATN lexerAtn) throws IOException {
+            int total = 0;
+            out.writeInt(dfas.length);
+            for (DFA dfa : dfas) {
+                if (dfa.isPrecedenceDfa() && !dfa.states.isEmpty()) {
+                    throw new IOException("precedence DFAs are not supported");
+                }
+                List<DFAState> states = new ArrayList<>(dfa.states.keySet());
+                Map<DFAState, Integer> ids = new IdentityHashMap<>();
+                for (DFAState state : states) ids.put(state, ids.size());
+
+                out.writeInt(states.size());
+                for (DFAState state : states) {
+                    if (state.predicates != null || state.configs.hasSemanticContext) {
+                        throw new IOException("semantic predicates are not supported");
+                    }
+                    out.writeInt(state.stateNumber);
+                    out.writeBoolean(state.isAcceptState);
+                    out.writeInt(state.prediction);
+                    out.writeBoolean(state.requiresFullContext);
+                    writeActions(out, lexerAtn, state.lexerActionExecutor);
+                    writeConfigs(out, lexerAtn, state.configs);
+                }
+                for (DFAState state : states) {
+                    writeEdges(out, state.edges, ids);
+                }
+                out.writeInt(dfa.s0 == null ? NONE : stateId(ids, dfa.s0));
+                total += states.size();
+            }
+            return total;
+        }
+
+        private void writeConfigs(DataOutputStream out, ATN lexerAtn, ATNConfigSet configs) throws IOException {
+            out.writeBoolean(configs.fullCtx);
+            out.writeInt(configs.uniqueAlt);
+            out.writeBoolean(configs.dipsIntoOuterContext);
+            long[] conflictingAlts = RestoredConfigSet.conflictingAlts(configs);
+            out.writeInt(conflictingAlts == null ? NONE : conflictingAlts.length);
+            if (conflictingAlts != null) {
+                for (long word : conflictingAlts) out.writeLong(word);
+            }
+            out.writeInt(configs.size());
+            for (ATNConfig config : configs) {
+                out.writeInt(config.state.stateNumber);
+                out.writeInt(config.alt);
+                out.writeInt(contextId(config.context));
+                out.writeInt(config.reachesIntoOuterContext); // includes the precedence filter flag
+                if (lexerAtn != null) {
+                    LexerATNConfig lexerConfig = (LexerATNConfig) config;
+                    writeActions(out, lexerAtn, lexerConfig.getLexerActionExecutor());
+                    out.writeBoolean(lexerConfig.hasPassedThroughNonGreedyDecision());
+                }
+            }
+        }
+
+        private void writeActions(DataOutputStream out, ATN lexerAtn, LexerActionExecutor executor) throws IOException {
+            if (lexerAtn == null) return;
+            if (executor == null) {
+                out.writeInt(NONE);
+                return;
+            }
+            LexerAction[] actions = executor.getLexerActions();
+            out.writeInt(actions.length);
+            for (LexerAction action : actions) {
+                int index = Arrays.asList(lexerAtn.lexerActions).indexOf(action);
+                if (index < 0) {
+                    throw new IOException("lexer action " + action + " is not supported");
+                }
+                out.writeInt(index);
+            }
+        }
+
+        private void writeEdges(DataOutputStream out, DFAState[] edges, Map<DFAState, Integer> ids) throws IOException {
+            if (edges == null) {
+                out.writeInt(NONE);
+                return;
+            }
+            out.writeInt(edges.length);
+            int count = 0;
+            for (DFAState target : edges) {
+                if (target != null) count++;
+            }
+            out.writeInt(count);
+            for (int i = 0; i < edges.length; i++) {
+                if (edges[i] == null) continue;
+                out.writeInt(i);
+                out.writeInt(edges[i] == ATNSimulator.ERROR ? ERROR_STATE : stateId(ids, edges[i]));
+            }
+        }
+
+        private static int stateId(Map<DFAState, Integer> ids, DFAState state) throws IOException {
+            Integer id = ids.get(state);
+            if (id == null) {
+                throw new IOException("DFA edge leads to a state outside its DFA");
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Rebuilds DFAs written by {@link Writer}.
+     */
+    private static class Reader {
+        private final ByteBuffer in;
+        private PredictionContext[] contexts;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        void readContexts() throws IOException {
+            contexts = new PredictionContext[in.getInt()];
+            for (int i = 0; i < contexts.length; i++) {
+                int kind = in.get();
+                if (kind == EMPTY_CONTEXT) {
+                    contexts[i] = EmptyPredictionContext.Instance;
+                } else if (kind == ARRAY_CONTEXT) {
+                    int size = in.getInt();
+                    PredictionContext[] parents = new PredictionContext[size];
+                    int[] returnStates = new int[size];
+                    for (int j = 0; j < size; j++) {
+                        parents[j] = context(in.getInt());
+                        returnStates[j] = in.getInt();
+                    }
+                    contexts[i] = new ArrayPredictionContext(parents, returnStates);
+                } else {
+                    PredictionContext parent = context(in.getInt());
+                    contexts[i] = SingletonPredictionContext.create(parent, in.getInt());
+                }
+            }
+        }
+
+        private PredictionContext context(int id) {
+            return id == NONE ? null : contexts[id];
+        }
+
+        int readDfas(DFA[] dfas, ATN atn, boolean lexer) throws IOException {
+            if (in.getInt() != dfas.length) {
+                throw new IOException("decision count does not match the grammar");
+            }
+            int total = 0;
+            for (DFA dfa : dfas) {
+                DFAState[] states = new DFAState[in.getInt()];
+                for (int i = 0; i < states.length; i++) {
+                    int stateNumber = in.getInt();
+                    boolean acceptState = in.get() != 0;
+                    int prediction = in.getInt();
+                    boolean requiresFullContext = in.get() != 0;
+                    LexerActionExecutor executor = lexer ? readActions(atn) : null;
+                    DFAState state = new DFAState(readConfigs(atn, lexer));
+                    state.stateNumber = stateNumber;
+                    state.isAcceptState = acceptState;
+                    state.prediction = prediction;
+                    state.requiresFullContext = requiresFullContext;
+                    state.lexerActionExecutor = executor;
+                    states[i] = state;
+                }
+                for (DFAState state : states) {
+                    state.edges = readEdges(states);
+                }
+                int s0 = in.getInt();
+
+                // A decision that has been used already keeps its own states
+                if (states.length > 0 && dfa.states.isEmpty()) {
+                    synchronized (dfa.states) {
+                        for (DFAState state : states) dfa.states.put(state, state);
+                    }
+                    if (s0 != NONE) dfa.s0 = states[s0];
+                    total += states.length;
+                }
+            }
+            return total;
+        }
+
+        private ATNConfigSet readConfigs(ATN atn, boolean lexer) throws IOException {
+            boolean fullCtx = in.get() != 0;
+            int uniqueAlt = in.getInt();
+            boolean dipsIntoOuterContext = in.get() != 0;
+            int words = in.getInt();
+            BitSet conflictingAlts = null;
+            if (words != NONE) {
+                long[] bits = new long[words];
+                for (int i = 0; i < words; i++) bits[i] = in.getLong();
+                conflictingAlts = BitSet.valueOf(bits);
+            }
+
+            RestoredConfigSet configs = new RestoredConfigSet(fullCtx, conflictingAlts);
+            int size = in.getInt();
+            for (int i = 0; i < size; i++) {
+                ATNState state = atn.states.get(in.getInt());
+                int alt = in.getInt();
+                PredictionContext context = context(in.getInt());
+                int reachesIntoOuterContext = in.getInt();
+                ATNConfig config;
+                if (lexer) {
+                    LexerActionExecutor executor = readActions(atn);
+                    config = new LexerATNConfig(state, alt, context, executor);
+                    if (in.get() != 0) RestoredConfigSet.markNonGreedy((LexerATNConfig) config);
+                } else {
+                    config = new ATNConfig(state, alt, context, SemanticContext.Empty.Instance);
+                }
+                config.reachesIntoOuterContext = reachesIntoOuterContext;
+                configs.configs.add(config); // as recorded; add() would merge lexer configurations
+            }
+            configs.uniqueAlt = uniqueAlt;
+            configs.dipsIntoOuterContext = dipsIntoOuterContext;
+            configs.setReadonly(true);
+            return configs;
+        }
+
+        private LexerActionExecutor readActions(ATN atn) throws IOException {
+            int count = in.getInt();
+            if (count == NONE) return null;
+            LexerAction[] actions = new LexerAction[count];
+            for (int i = 0; i < count; i++) {
+                actions[i] = atn.lexerActions[in.getInt()];
+            }
+            return new LexerActionExecutor(actions);
+        }
+
+        private DFAState[] readEdges(DFAState[] states) throws IOException {
+            int length = in.getInt();
+            if (length == NONE) return null;
+            DFAState[] edges = new DFAState[length];
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                int index = in.getInt();
+                int target = in.getInt();
+                edges[index] = target == ERROR_STATE ? ATNSimulator.ERROR : states[target];
+            }
+            return edges;
+        }
+    }
+
+    /**
+     * Configuration set of a restored DFA state. ANTLR only sets the conflicting alternatives
+     * and the non-greedy flag of lexer configurations while simulating, so they are restored here.
+     */
+    private static class RestoredConfigSet extends ATNConfigSet {
+        private static final Field CONFLICTING_ALTS = field(ATNConfigSet.class, "conflictingAlts");
+        private static final Field NON_GREEDY = field(LexerATNConfig.class, "passedThroughNonGreedyDecision");
+
+        RestoredConfigSet(boolean fullCtx, BitSet conflictingAlts) {
+            super(fullCtx);
+            this.conflictingAlts = conflictingAlts;
+        }
+
+        static long[] conflictingAlts(ATNConfigSet configs) throws IOException {
+            try {
+                BitSet alts = (BitSet) CONFLICTING_ALTS.get(configs);
+                return alts == null ? null : alts.toLongArray();
+            } catch (IllegalAccessException e) {
+                throw new IOException("cannot read DFA state", e);
+            }
+        }
+
+        static void markNonGreedy(LexerATNConfig config) throws IOException {
+            try {
+                NON_GREEDY.setBoolean(config, true);
+            } catch (IllegalAccessException e) {
+                throw new IOException("cannot restore DFA state", e);
+            }
+        }
+
+        private static Field field(Class<?> type, String name) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException e) {
+                throw new IllegalStateException("ANTLR runtime without " + type.getSimpleName() + "." + name, e);
+            }
+        }
+    }
+}
@@ -1,14 +1,11 @@
 package cobol;
 
-import cobol.antlr.Cobol85BaseVisitor;
 import cobol.antlr.Cobol85Parser;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 
 import java.util.LinkedHashSet;
 import java.util.Set;
 
-public class DivisionSectionVisitor extends Cobol85BaseVisitor<Void> {
+public class DivisionSectionVisitor extends AnalysisVisitor {
     private final Set<String> divisions = new LinkedHashSet<>();
     private final Set<String> sections = new LinkedHashSet<>();
 
@@ -51,10 +48,11 @@ public class DivisionSectionVisitor extends Cobol85BaseVisitor<Void> {
         return visitChildren(ctx);
     }
 
-    public JSONObject getDivisionStructure() {
-        JSONObject divJson = new JSONObject();
-        divJson.put("divisions", new JSONArray() {{ addAll(divisions); }});
-        divJson.put("sections", new JSONArray() {{ addAll(sections); }});
-        return divJson;
+    public Set<String> getDivisions() {
+        return divisions;
+    }
+
+    public Set<String> getSections() {
+        return sections;
     }
 }
\ No newline at end of file
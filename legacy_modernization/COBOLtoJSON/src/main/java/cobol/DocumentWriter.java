@@ -0,0 +1,56 @@
+package cobol;
+
+import java.io.IOException;
+
+/**
+ * Streaming writer for documents in the JSON data model. {@link JsonStreamWriter} writes them as
+ * JSON text and {@link BinaryOutputWriter} as CBOR; model objects write themselves to either.
+ */
+public interface DocumentWriter {
+
+    DocumentWriter beginObject() throws IOException;
+
+    DocumentWriter endObject() throws IOException;
+
+    DocumentWriter beginArray() throws IOException;
+
+    DocumentWriter endArray() throws IOException;
+
+    /**
+     * Writes the name of the next member of the current object.
+     * @param name The member name
+     * @return This writer
+     * @throws IOException If writing fails
+     */
+    DocumentWriter name(String name) throws IOException;
+
+    /**
+     * Writes a value: null, a string, number or boolean, a {@link JsonWritable}, or a map or list of such values.
+     * @param value The value
+     * @return This writer
+     * @throws IOException If writing fails
+     */
+    DocumentWriter value(Object value) throws IOException;
+
+    /**
+     * Writes a number without boxing it.
+     * @param value The value
+     * @return This writer
+     * @throws IOException If writing fails
+     */
+    DocumentWriter value(long value) throws IOException;
+
+    /**
+     * Writes an array of values, such as the names in a set.
+     * @param values The elements
+     * @return This writer
+     * @throws IOException If writing fails
+     */
+    default DocumentWriter array(Iterable<?> values) throws IOException {
+        beginArray();
+        for (Object value : values) {
+            value(value);
+        }
+        return endArray();
+    }
+}
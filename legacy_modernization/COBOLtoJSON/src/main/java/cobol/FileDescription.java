@@ -0,0 +1,62 @@
+package cobol;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A file description (FD) entry: the file name, its LABEL RECORD clause and its record layouts.
+ */
+public class FileDescription implements JsonWritable {
+    private final String name;
+    private final String label;
+    private final List<DataItem> records = new ArrayList<>();
+
+    /**
+     * @param name File name, upper case
+     * @param label LABEL RECORD clause, or OMITTED
+     */
+    public FileDescription(String name, String label) {
+        this.name = name.intern();
+        this.label = label;
+    }
+
+    public void addRecord(DataItem record) {
+        records.add(record);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public List<DataItem> getRecords() {
+        return records;
+    }
+
+    /**
+     * Checks whether a record of this file has the given name.
+     * @param recordName Record name, upper case
+     * @return true if the file has such a record
+     */
+    public boolean hasRecord(String recordName) {
+        for (DataItem record : records) {
+            if (record.getName().equals(recordName)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void writeJson(DocumentWriter out) throws IOException {
+        out.beginObject();
+        if (!records.isEmpty()) {
+            out.name("records").value(records);
+        }
+        out.name("name").value(name)
+                .name("label").value(label)
+                .endObject();
+    }
+}
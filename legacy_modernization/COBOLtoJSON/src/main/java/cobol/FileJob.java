@@ -0,0 +1,58 @@
+package cobol;
+
+import org.antlr.v4.runtime.TokenStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * State of one program as it moves through the processing steps: the mapped or inline source, the preprocessed
+ * text, tokens, parse segments or streamed analyses, and finally the assembled outputs. Each step fills in its part and
+ * hands the job on; errors are collected here and published once the job is finished.
+ */
+public class FileJob {
+    final Path inputFile;
+    final List<ParsingError> errors = new ArrayList<>();
+    String sourceHash;
+    ByteBuffer sourceBytes;
+    String sourceCode;
+    PreprocessingContext preprocessing;
+    TokenStream tokens;
+    List<ParseSegment> segments;
+    ProgramAnalyses analyses;
+    long parseNanos;
+    long stageNanos; // time spent running pipeline stages, charged against the per-file time limit
+    String programId;
+    Program program;
+    String callGraphMermaid;
+    String dataFlowMermaid;
+
+    public FileJob(Path inputFile) {
+        this.inputFile = inputFile;
+    }
+
+    public Path getInputFile() {
+        return inputFile;
+    }
+
+    /**
+     * Records the exception that ended a step.
+     * @param e The exception thrown by the step
+     */
+    void fail(Exception e) {
+        if (e instanceof CancellationException || e instanceof InterruptedException || e instanceof ClosedByInterruptException) {
+            // Timed out or shut down; the work queue records the reason
+            return;
+        }
+        if (e instanceof IOException) {
+            errors.add(new ParsingError(inputFile.toString(), "I/O error: " + e.getMessage(), 0));
+        } else {
+            errors.add(new ParsingError(inputFile.toString(), "Processing error: " + e.getMessage(), 0));
+        }
+    }
+}
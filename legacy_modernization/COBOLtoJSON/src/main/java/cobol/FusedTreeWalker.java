@@ -0,0 +1,114 @@
+package cobol;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Walks a parse tree once and dispatches every rule node to all registered analyses,
+ * in registration order, before descending into its children. This replaces one full
+ * tree walk per visitor with a single walk for all of them.
+ * Terminal nodes are not dispatched; none of the analyses handle them.
+ * A walk stops with a {@link CancellationException} once the walking thread is interrupted, or
+ * once a given cancellation check reports true for walks on pool threads that are never interrupted.
+ */
+public class FusedTreeWalker {
+    private final List<AnalysisVisitor> analyses;
+    private final BooleanSupplier cancelled;
+
+    public FusedTreeWalker(AnalysisVisitor... analyses) {
+        this(Arrays.asList(analyses));
+    }
+
+    public FusedTreeWalker(List<AnalysisVisitor> analyses) {
+        this(analyses, () -> Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * @param analyses The analyses to dispatch to
+     * @param cancelled Checked periodically during a walk
+     */
+    public FusedTreeWalker(List<AnalysisVisitor> analyses, BooleanSupplier cancelled) {
+        this.analyses = new ArrayList<>(analyses);
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Walks the segments of a program in source order, announcing each segment to the analyses first.
+     * @param segments The parsed program
+     */
+    public void walk(List<ParseSegment> segments) {
+        for (ParseSegment segment : segments) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException("Analysis cancelled");
+            }
+            enterSegment(segment);
+            walk(segment.tree);
+        }
+    }
+
+    /**
+     * Announces a segment to the analyses before its nodes are dispatched.
+     * @param segment The segment about to be walked
+     */
+    void enterSegment(ParseSegment segment) {
+        for (AnalysisVisitor analysis : analyses) {
+            analysis.enterSegment(segment);
+        }
+    }
+
+    /**
+     * Walks the tree depth-first with an explicit stack, so very deep trees cannot overflow the call stack.
+     * @param tree The parse tree to walk
+     */
+    public void walk(ParseTree tree) {
+        if (!(tree instanceof ParserRuleContext)) return;
+
+        ParserRuleContext[] nodes = new ParserRuleContext[64];
+        int[] nextChild = new int[64];
+        int depth = 0;
+        int steps = 0;
+        nodes[0] = (ParserRuleContext) tree;
+        enter(nodes[0]);
+
+        while (depth >= 0) {
+            if ((++steps & 4095) == 0 && cancelled.getAsBoolean()) {
+                throw new CancellationException("Analysis cancelled");
+            }
+            ParserRuleContext node = nodes[depth];
+            int index = nextChild[depth]++;
+            if (index < node.getChildCount()) {
+                ParseTree child = node.getChild(index);
+                if (child instanceof ParserRuleContext) {
+                    if (++depth == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, depth * 2);
+                        nextChild = Arrays.copyOf(nextChild, depth * 2);
+                    }
+                    nodes[depth] = (ParserRuleContext) child;
+                    nextChild[depth] = 0;
+                    enter(nodes[depth]);
+                }
+            } else {
+                exit(node);
+                nodes[depth--] = null;
+            }
+        }
+    }
+
+    void enter(ParserRuleContext node) {
+        for (AnalysisVisitor analysis : analyses) {
+            node.accept(analysis);
+        }
+    }
+
+    void exit(ParserRuleContext node) {
+        for (AnalysisVisitor analysis : analyses) {
+            analysis.exitNode(node);
+        }
+    }
+}
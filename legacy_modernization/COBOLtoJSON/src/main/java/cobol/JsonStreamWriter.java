@@ -0,0 +1,247 @@
+package cobol;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONAware;
+import org.json.simple.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes JSON straight to a character stream instead of building it as one string first.
+ * Documents can be written piece by piece with {@link #beginObject()}, {@link #name(String)} and
+ * {@link #value(Object)}, or as whole json-simple values. Values are written exactly as
+ * json-simple's {@code toJSONString()} writes them: the same escaping, number formats and map
+ * iteration order, so the output does not depend on which of the two produced it.
+ */
+public class JsonStreamWriter implements DocumentWriter, Closeable, Flushable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer out;
+    private boolean[] first = new boolean[16]; // per open object or array: no member written yet
+    private int depth;
+    private boolean afterName;
+
+    /**
+     * @param out Destination; it is flushed and closed with this writer
+     */
+    public JsonStreamWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Opens a file for writing through a buffered channel, replacing its contents.
+     * @param path The JSON file
+     * @return The writer
+     * @throws IOException If the file cannot be opened
+     */
+    public static JsonStreamWriter open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new JsonStreamWriter(new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE));
+    }
+
+    @Override
+    public JsonStreamWriter beginObject() throws IOException {
+        beforeValue();
+        out.write('{');
+        push();
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter endObject() throws IOException {
+        out.write('}');
+        depth--;
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter beginArray() throws IOException {
+        beforeValue();
+        out.write('[');
+        push();
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter endArray() throws IOException {
+        out.write(']');
+        depth--;
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter value(Object value) throws IOException {
+        beforeValue();
+        write(value);
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Gets the entries of a name-keyed map in the order json-simple writes a {@code JSONObject}
+     * filled from it. json-simple objects are hash maps, so model objects written in this order
+     * produce the same files as the maps they replaced.
+     * @param map The map, in insertion order
+     * @return The entries in output order
+     */
+    static <V> Set<Map.Entry<String, V>> objectOrder(Map<String, V> map) {
+        if (map instanceof HashMap && !(map instanceof LinkedHashMap)) {
+            return map.entrySet();
+        }
+        Map<String, V> ordered = new HashMap<>();
+        for (Map.Entry<String, V> entry : map.entrySet()) {
+            ordered.put(entry.getKey(), entry.getValue());
+        }
+        return ordered.entrySet();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void write(Object value) throws IOException {
+        if (value == null) {
+            out.write("null");
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Double) {
+            Double d = (Double) value;
+            out.write(d.isInfinite() || d.isNaN() ? "null" : d.toString());
+        } else if (value instanceof Float) {
+            Float f = (Float) value;
+            out.write(f.isInfinite() || f.isNaN() ? "null" : f.toString());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.write(value.toString());
+        } else if (value instanceof JsonWritable) {
+            afterName = true; // the separator, if any, is already written
+            ((JsonWritable) value).writeJson(this);
+        } else if (value instanceof JSONAware && !(value instanceof JSONObject) && !(value instanceof JSONArray)) {
+            out.write(((JSONAware) value).toJSONString());
+        } else if (value instanceof Map) {
+            writeMap((Map<?, ?>) value);
+        } else if (value instanceof List) {
+            writeList((List<?>) value);
+        } else {
+            out.write(value.toString());
+        }
+    }
+
+    private void writeMap(Map<?, ?> map) throws IOException {
+        out.write('{');
+        boolean firstEntry = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!firstEntry) out.write(',');
+            firstEntry = false;
+            writeString(String.valueOf(entry.getKey()));
+            out.write(':');
+            write(entry.getValue());
+        }
+        out.write('}');
+    }
+
+    private void writeList(List<?> list) throws IOException {
+        out.write('[');
+        boolean firstElement = true;
+        for (Object element : list) {
+            if (!firstElement) out.write(',');
+            firstElement = false;
+            write(element);
+        }
+        out.write(']');
+    }
+
+    /**
+     * Writes a quoted string with json-simple's escaping, copying unescaped runs in one call.
+     */
+    private void writeString(String s) throws IOException {
+        out.write('"');
+        int run = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            String escape = escape(ch);
+            if (escape != null) {
+                out.write(s, run, i - run);
+                out.write(escape);
+                run = i + 1;
+            }
+        }
+        out.write(s, run, s.length() - run);
+        out.write('"');
+    }
+
+    private static String escape(char ch) {
+        switch (ch) {
+            case '"': return "\\\"";
+            case '\\': return "\\\\";
+            case '\b': return "\\b";
+            case '\f': return "\\f";
+            case '\n': return "\\n";
+            case '\r': return "\\r";
+            case '\t': return "\\t";
+            case '/': return "\\/";
+            default:
+                if (ch <= '\u001F' || (ch >= '\u007F' && ch <= '\u009F') || (ch >= '\u2000' && ch <= '\u20FF')) {
+                    String hex = Integer.toHexString(ch).toUpperCase();
+                    return "\\u" + "0000".substring(hex.length()) + hex;
+                }
+                return null;
+        }
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else {
+            separate();
+        }
+    }
+
+    private void separate() throws IOException {
+        if (depth == 0) return;
+        if (!first[depth]) out.write(',');
+        first[depth] = false;
+    }
+
+    private void push() {
+        if (++depth == first.length) {
+            first = Arrays.copyOf(first, depth * 2);
+        }
+        first[depth] = true;
+    }
+}
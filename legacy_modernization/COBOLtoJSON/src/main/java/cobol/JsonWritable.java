@@ -0,0 +1,32 @@
+package cobol;
+
+import org.json.simple.JSONAware;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+/**
+ * A model object that writes its JSON form straight to a {@link DocumentWriter}. It is also
+ * {@link JSONAware}, so it can be placed inside json-simple objects and arrays.
+ */
+public interface JsonWritable extends JSONAware {
+
+    /**
+     * Writes this object as one JSON value.
+     * @param out The writer
+     * @throws IOException If writing fails
+     */
+    void writeJson(DocumentWriter out) throws IOException;
+
+    @Override
+    default String toJSONString() {
+        StringWriter buffer = new StringWriter();
+        try {
+            writeJson(new JsonStreamWriter(buffer));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package cobol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Orders the files of a batch so that the most expensive ones start first and a large program
+ * found late in the walk does not hold the batch open after the other workers go idle.
+ * The cost of a file is its parse duration from the previous run when the parse report has one.
+ * Other files are estimated from their size in bytes or lines, scaled by the time per byte or
+ * line of the files that do have a duration, so both kinds of estimate can be compared.
+ */
+public class LargestFirstScheduler {
+    private final Map<String, Long> previousDurations;
+    private final boolean countLines;
+    private int timedFiles;
+
+    /**
+     * @param previousDurations Parse durations in milliseconds by file, from {@link ParseReport#readDurations}
+     * @param countLines Whether to measure size in lines instead of bytes
+     */
+    public LargestFirstScheduler(Map<String, Long> previousDurations, boolean countLines) {
+        this.previousDurations = previousDurations;
+        this.countLines = countLines;
+    }
+
+    /**
+     * Sorts files by estimated cost, most expensive first. Files of equal cost keep their order.
+     * @param files The files to schedule
+     * @return The files in dispatch order
+     */
+    public List<Path> order(List<Path> files) {
+        Map<Path, Long> sizes = new HashMap<>();
+        double timedMillis = 0;
+        double timedSize = 0;
+        timedFiles = 0;
+        for (Path file : files) {
+            long size = sizeOf(file);
+            sizes.put(file, size);
+            Long duration = previousDurations.get(file.toString());
+            if (duration != null) {
+                timedMillis += duration;
+                timedSize += size;
+                timedFiles++;
+            }
+        }
+
+        // Without usable timings every cost is a plain size, which orders the files just as well
+        boolean useDurations = timedMillis > 0 && timedSize > 0;
+        double millisPerUnit = useDurations ? timedMillis / timedSize : 1;
+        Map<Path, Double> costs = new HashMap<>();
+        for (Path file : files) {
+            Long duration = useDurations ? previousDurations.get(file.toString()) : null;
+            costs.put(file, duration != null ? duration : sizes.get(file) * millisPerUnit);
+        }
+
+        List<Path> ordered = new ArrayList<>(files);
+        ordered.sort((a, b) -> Double.compare(costs.get(b), costs.get(a)));
+        return ordered;
+    }
+
+    /**
+     * Gets the number of files of the last {@link #order} call that had a previous duration.
+     * @return Count of files scheduled by measured duration
+     */
+    public int getTimedFiles() {
+        return timedFiles;
+    }
+
+    private long sizeOf(Path file) {
+        try {
+            return countLines ? countLines(file) : Files.size(file);
+        } catch (IOException e) {
+            return 0; // Unreadable files fail quickly in the read stage
+        }
+    }
+
+    private static long countLines(Path file) throws IOException {
+        long lines = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') lines++;
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,70 @@
+package cobol;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A data movement: a statement that reads the source variables and writes the target.
+ */
+public class Movement implements JsonWritable {
+    private static final String[] NO_SOURCES = new String[0];
+
+    private final String operation;
+    private final String[] sources;
+    private final String target;
+    private final int line;
+
+    /**
+     * @param operation Statement keyword, such as MOVE or COMPUTE
+     * @param sources Variables read; may be shared by the movements of one statement
+     * @param target Variable written, or null
+     * @param line Line number of the statement
+     */
+    public Movement(String operation, String[] sources, String target, int line) {
+        this.operation = operation;
+        this.sources = sources.length == 0 ? NO_SOURCES : sources;
+        this.target = target == null ? null : target.intern();
+        this.line = line;
+    }
+
+    /**
+     * Converts the variables read by a statement, interning their names.
+     * @param sources The variable names; null entries are kept
+     * @return The array to pass to the movements of the statement
+     */
+    public static String[] sources(List<String> sources) {
+        String[] names = new String[sources.size()];
+        for (int i = 0; i < names.length; i++) {
+            String name = sources.get(i);
+            names[i] = name == null ? null : name.intern();
+        }
+        return names;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public List<String> getSource() {
+        return Arrays.asList(sources);
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public void writeJson(DocumentWriter out) throws IOException {
+        out.beginObject()
+                .name("line").value(line)
+                .name("source").array(Arrays.asList(sources))
+                .name("operation").value(operation)
+                .name("target").value(target)
+                .endObject();
+    }
+}
@@ -0,0 +1,122 @@
+package cobol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The output sections a run produces, from "outputSections" in config.json or {@code --sections}
+ * on the command line. Sections are the top-level members of the program document plus the two
+ * Mermaid diagrams, {@code callGraphMermaid} and {@code dataFlowMermaid}. The analyses and writers
+ * that only feed unselected sections are not run at all; {@code programId} and {@code errors} are
+ * always written, and the errors then only come from the analyses that ran.
+ */
+public class OutputSections {
+    /** Document sections in the order they are written. */
+    static final List<String> DOCUMENT = Collections.unmodifiableList(Arrays.asList(
+            "complexity", "structuredStatements", "callGraph", "paragraphOrigins", "workingStorage", "paragraphs",
+            "structure", "copybooks", "calls", "fileDescriptions", "dataMovement"));
+    static final String CALL_GRAPH_MERMAID = "callGraphMermaid";
+    static final String DATA_FLOW_MERMAID = "dataFlowMermaid";
+
+    static final OutputSections ALL = new OutputSections(null);
+
+    private final Set<String> selected; // null for all
+
+    private OutputSections(Set<String> selected) {
+        this.selected = selected;
+    }
+
+    /**
+     * Parses a list of section names.
+     * @param names The names; null for all sections
+     * @return The selection
+     * @throws IllegalArgumentException If a name is not a section or there are none
+     */
+    static OutputSections of(Collection<String> names) {
+        if (names == null) return ALL;
+        Set<String> selected = new LinkedHashSet<>();
+        for (String name : names) {
+            String section = name.trim();
+            if (section.isEmpty()) continue;
+            if (!DOCUMENT.contains(section) && !CALL_GRAPH_MERMAID.equals(section) && !DATA_FLOW_MERMAID.equals(section)) {
+                List<String> known = new ArrayList<>(DOCUMENT);
+                known.add(CALL_GRAPH_MERMAID);
+                known.add(DATA_FLOW_MERMAID);
+                throw new IllegalArgumentException("unknown section " + section + " (expected one of " + String.join(", ", known) + ")");
+            }
+            selected.add(section);
+        }
+        if (selected.isEmpty()) throw new IllegalArgumentException("no sections selected");
+        return new OutputSections(selected);
+    }
+
+    public boolean has(String section) {
+        return selected == null || selected.contains(section);
+    }
+
+    private boolean hasAny(String... sections) {
+        for (String section : sections) {
+            if (has(section)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the program document is written; false if only diagrams are selected.
+     */
+    public boolean hasDocument() {
+        for (String section : DOCUMENT) {
+            if (has(section)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the main paragraph is structured into statements, which gives the complexity and call graph too.
+     */
+    boolean needsStatements() {
+        return hasAny("complexity", "structuredStatements", "callGraph");
+    }
+
+    /**
+     * Whether paragraphs and their sentences are collected ({@link CobolJsonVisitor}).
+     */
+    boolean needsParagraphs() {
+        return needsStatements() || hasAny("paragraphOrigins", "paragraphs", "calls", CALL_GRAPH_MERMAID);
+    }
+
+    /**
+     * Whether the statement and file description walk runs ({@link StructuredStatementTransformer}).
+     */
+    boolean needsTransformer() {
+        return needsStatements() || has("fileDescriptions");
+    }
+
+    /**
+     * Whether data movements are tracked ({@link VariableTrackerVisitor}).
+     */
+    boolean needsDataFlow() {
+        return hasAny("dataMovement", DATA_FLOW_MERMAID);
+    }
+
+    /**
+     * Whether working storage is extracted ({@link WorkingStorageVisitor}); data flow reads its declarations.
+     */
+    boolean needsWorkingStorage() {
+        return needsDataFlow() || has("workingStorage");
+    }
+
+    boolean needsStructure() {
+        return has("structure");
+    }
+
+    @Override
+    public String toString() {
+        return selected == null ? "all" : String.join(", ", selected);
+    }
+}
@@ -0,0 +1,74 @@
+package cobol;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A paragraph of the procedure division with the source lines of its sentences. The lines are
+ * kept as parallel text and line-number arrays; each is written as
+ * {@code {"line": ..., "from": <paragraph>, "text": ...}}.
+ */
+public class Paragraph implements JsonWritable {
+    private final String name;
+    private final String origin;
+    private String[] texts = new String[8];
+    private int[] lines = new int[8];
+    private int size;
+
+    /**
+     * @param name Paragraph name, or {@code _MAIN} for the statements before the first paragraph
+     * @param origin Program ID of the program the paragraph belongs to
+     */
+    public Paragraph(String name, String origin) {
+        this.name = name.intern();
+        this.origin = origin;
+    }
+
+    /**
+     * Adds a normalized source line.
+     * @param text The line text
+     * @param line The line number
+     */
+    public void add(String text, int line) {
+        if (size == texts.length) {
+            texts = Arrays.copyOf(texts, size * 2);
+            lines = Arrays.copyOf(lines, size * 2);
+        }
+        texts[size] = text;
+        lines[size] = line;
+        size++;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getText(int i) {
+        return texts[i];
+    }
+
+    public int getLine(int i) {
+        return lines[i];
+    }
+
+    @Override
+    public void writeJson(DocumentWriter out) throws IOException {
+        out.beginArray();
+        for (int i = 0; i < size; i++) {
+            out.beginObject()
+                    .name("line").value(lines[i])
+                    .name("from").value(name)
+                    .name("text").value(texts[i])
+                    .endObject();
+        }
+        out.endArray();
+    }
+}
@@ -0,0 +1,104 @@
+package cobol;
+
+import cobol.antlr.Cobol85Lexer;
+import cobol.antlr.Cobol85Parser;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.TokenStream;
+
+/**
+ * Per-thread lexer and parser that are re-armed for every file instead of being rebuilt.
+ * The ANTLR DFA cache is static and already shared, so only the recognizer instances are
+ * reused here. Lexing and parsing are separate steps so they can run on different threads.
+ */
+public class ParseContext {
+    private static final ThreadLocal<ParseContext> CURRENT = ThreadLocal.withInitial(ParseContext::new);
+    private static final CharStream EMPTY_INPUT = CharStreams.fromString("");
+
+    private final Cobol85Lexer lexer;
+    private final CommonTokenStream idleTokens;
+    private final Cobol85Parser parser;
+
+    private ParseContext() {
+        lexer = new Cobol85Lexer(EMPTY_INPUT);
+        idleTokens = new CommonTokenStream(lexer);
+        idleTokens.fill();
+        parser = new Cobol85Parser(idleTokens);
+    }
+
+    /**
+     * Gets the parse context owned by the calling thread.
+     * @return The thread's parse context
+     */
+    public static ParseContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Tokenizes a whole input with this thread's lexer.
+     * @param input The preprocessed source
+     * @param compact Whether to record the tokens in a {@link CompactTokenStream} instead of one object per token
+     * @return A filled token stream that no longer needs the lexer
+     */
+    public TokenStream lex(CharStream input, boolean compact) {
+        lexer.setInputStream(input); // resets lexer mode stack and position
+        try {
+            if (compact) {
+                return CompactTokenStream.tokenize(lexer);
+            }
+            CommonTokenStream tokens = new CancellableTokenStream(lexer);
+            tokens.fill();
+            return tokens;
+        } finally {
+            lexer.setInputStream(EMPTY_INPUT);
+        }
+    }
+
+    /**
+     * Re-arms the parser with a token stream and parses it.
+     * @param tokens Tokens from {@link #lex}
+     * @param listener Error listener for this file
+     * @param twoStage Whether to try SLL prediction before full LL
+     * @return The parse tree and the stage that produced it
+     */
+    public TwoStageParser.Result parse(TokenStream tokens, ANTLRErrorListener listener, boolean twoStage) {
+        parser.setTokenStream(tokens); // resets parser context, error count and recovery state
+        parser.setBuildParseTree(true);
+        return TwoStageParser.parse(parser, tokens, listener, twoStage);
+    }
+
+    /**
+     * Re-arms the parser with a token stream and parses it without building a parse tree,
+     * running the analyses from the parse events instead.
+     * @param tokens Tokens from {@link #lex}
+     * @param listener Error listener for this file
+     * @param twoStage Whether to try SLL prediction before full LL
+     * @param walker Receives the parse events; restarted if the SLL stage fails
+     * @return The outline of the program and the stage that produced it
+     */
+    public TwoStageParser.Result stream(TokenStream tokens, ANTLRErrorListener listener, boolean twoStage, StreamingTreeWalker walker) {
+        parser.setTokenStream(tokens);
+        parser.setBuildParseTree(false);
+        parser.addParseListener(walker);
+        try {
+            return TwoStageParser.parse(parser, tokens, listener, twoStage, Cobol85Parser::startRule, walker::restart);
+        } finally {
+            parser.removeParseListener(walker);
+        }
+    }
+
+    public Cobol85Parser getParser() {
+        return parser;
+    }
+
+    /**
+     * Detaches the last file's tokens so they can be garbage collected while the thread
+     * is idle. The parser stays ready for the next file.
+     */
+    public void release() {
+        parser.setTokenStream(idleTokens);
+        parser.removeErrorListeners();
+    }
+}
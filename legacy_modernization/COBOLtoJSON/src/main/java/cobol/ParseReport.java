@@ -0,0 +1,132 @@
+package cobol;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects per-file parse statistics for a batch run: the prediction stage that produced
+ * each parse tree and the time spent lexing and parsing it. Safe for concurrent use by the
+ * worker threads.
+ */
+public class ParseReport {
+    private final Map<String, TwoStageParser.Stage> stages = new ConcurrentHashMap<>();
+    private final Map<String, Long> durations = new ConcurrentHashMap<>();
+    private final Map<String, JSONObject> carried = new HashMap<>(); // entries of files not parsed in this run
+
+    /**
+     * Records the prediction stage that succeeded for a file and how long the parse took.
+     * @param file The parsed file
+     * @param stage The successful stage
+     * @param durationMillis Time spent lexing and parsing the file
+     */
+    public void recordStage(Path file, TwoStageParser.Stage stage, long durationMillis) {
+        stages.put(file.toString(), stage);
+        durations.put(file.toString(), durationMillis);
+    }
+
+    public boolean isEmpty() {
+        return stages.isEmpty();
+    }
+
+    /**
+     * Counts the files that finished in a given stage.
+     * @param stage The stage to count
+     * @return Number of files parsed by that stage
+     */
+    public int count(TwoStageParser.Stage stage) {
+        int count = 0;
+        for (TwoStageParser.Stage s : stages.values()) {
+            if (s == stage) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Converts the report to JSON.
+     * @return JSONObject with stage totals and the per-file stages and durations
+     */
+    public JSONObject toJson() {
+        JSONObject files = new JSONObject();
+        files.putAll(carried);
+        for (Map.Entry<String, TwoStageParser.Stage> entry : stages.entrySet()) {
+            JSONObject fileJson = new JSONObject();
+            fileJson.put("stage", entry.getValue().name());
+            fileJson.put("durationMs", durations.get(entry.getKey()));
+            files.put(entry.getKey(), fileJson);
+        }
+        JSONObject totals = new JSONObject();
+        for (TwoStageParser.Stage stage : TwoStageParser.Stage.values()) {
+            totals.put(stage.name(), count(stage));
+        }
+        JSONObject report = new JSONObject();
+        report.put("stages", totals);
+        report.put("files", files);
+        return report;
+    }
+
+    /**
+     * Writes the report to a JSON file.
+     * @param reportPath Output path for the report
+     * @throws IOException If writing fails
+     */
+    public void write(Path reportPath) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(reportPath, StandardCharsets.UTF_8)) {
+            writer.write(toJson().toJSONString());
+        }
+    }
+
+    /**
+     * Keeps the entries of an earlier report for files that still exist but were not parsed in
+     * this run, such as files an incremental run left unchanged, so that largest-first scheduling
+     * keeps their parse times. The stage totals still count this run only.
+     * @param reportPath Path of the earlier report
+     */
+    public void keepPrevious(Path reportPath) {
+        if (!Files.exists(reportPath)) return;
+        try {
+            String content = new String(Files.readAllBytes(reportPath), StandardCharsets.UTF_8);
+            JSONObject files = (JSONObject) ((JSONObject) new JSONParser().parse(content)).get("files");
+            for (Object file : files.keySet()) {
+                if (!stages.containsKey(file) && Files.exists(Paths.get((String) file))) {
+                    carried.put((String) file, (JSONObject) files.get(file));
+                }
+            }
+        } catch (IOException | ParseException | RuntimeException e) {
+            System.err.println("Ignoring unreadable parse report: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the per-file parse durations of an earlier run.
+     * @param reportPath Path of a report written by {@link #write(Path)}
+     * @return Map from file to duration in milliseconds; empty if there is no readable report
+     */
+    public static Map<String, Long> readDurations(Path reportPath) {
+        Map<String, Long> previous = new HashMap<>();
+        if (!Files.exists(reportPath)) return previous;
+        try {
+            String content = new String(Files.readAllBytes(reportPath), StandardCharsets.UTF_8);
+            JSONObject files = (JSONObject) ((JSONObject) new JSONParser().parse(content)).get("files");
+            for (Object file : files.keySet()) {
+                Object duration = ((JSONObject) files.get(file)).get("durationMs");
+                if (duration instanceof Number) {
+                    previous.put((String) file, ((Number) duration).longValue());
+                }
+            }
+        } catch (IOException | ParseException | RuntimeException e) {
+            System.err.println("Ignoring unreadable parse report: " + e.getMessage());
+        }
+        return previous;
+    }
+}
\ No newline at end of file
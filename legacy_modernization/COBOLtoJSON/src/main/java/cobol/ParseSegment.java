@@ -0,0 +1,37 @@
+package cobol;
+
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.List;
+
+/**
+ * One parsed piece of a program: a parse tree, the token stream it was built from,
+ * and the prediction stage that produced it. A whole-file parse yields a single segment;
+ * a split parse yields the head followed by the PROCEDURE DIVISION chunks in source order.
+ */
+public class ParseSegment {
+    public final ParseTree tree;
+    public final TokenStream tokens;
+    public final TwoStageParser.Stage stage;
+
+    public ParseSegment(ParseTree tree, TokenStream tokens, TwoStageParser.Stage stage) {
+        this.tree = tree;
+        this.tokens = tokens;
+        this.stage = stage;
+    }
+
+    /**
+     * Gets the most expensive stage used by any segment, i.e. LL if any segment needed the fallback.
+     * @param segments The segments of one program
+     * @return The stage to report for the program
+     */
+    public static TwoStageParser.Stage slowestStage(List<ParseSegment> segments) {
+        for (ParseSegment segment : segments) {
+            if (segment.stage == TwoStageParser.Stage.LL) {
+                return TwoStageParser.Stage.LL;
+            }
+        }
+        return TwoStageParser.Stage.SLL;
+    }
+}
@@ -0,0 +1,202 @@
+package cobol;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running parse service, so that repeated requests share one warmed JVM: loaded parser
+ * classes, the ANTLR DFA cache, per-thread recognizers and cached copybooks. The protocol is
+ * JSON-RPC 2.0 with one message per line, on stdin/stdout or on a localhost socket.
+ * <p>
+ * Methods:
+ * <ul>
+ *   <li>{@code parse} with {@code {"path": ...}} or {@code {"source": ..., "name": ...}} returns
+ *       {@code {"output": <the JSON written by a batch run>, "callGraph": ..., "dataFlow": ..., "errors": [...]}};
+ *       {@code output} is null if the program could not be parsed</li>
+ *   <li>{@code shutdown} stops the service</li>
+ * </ul>
+ */
+public class ParseServer {
+    private static final int INVALID_REQUEST = -32600;
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final int INVALID_PARAMS = -32602;
+    private static final int INTERNAL_ERROR = -32603;
+    private static final int PARSE_ERROR = -32700;
+
+    private final CobolPreprocessor preprocessor;
+    private volatile boolean running = true;
+    private ServerSocket serverSocket;
+
+    public ParseServer(CobolPreprocessor preprocessor) {
+        this.preprocessor = preprocessor;
+    }
+
+    /**
+     * Serves requests from stdin until it is closed or a shutdown request arrives. Responses go
+     * to stdout; console output of the analyses is moved to stderr so that it cannot corrupt them.
+     * @throws IOException If reading or writing fails
+     */
+    public void serveStdio() throws IOException {
+        PrintStream protocolOut = System.out;
+        System.setOut(System.err);
+        serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                new BufferedWriter(new OutputStreamWriter(protocolOut, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Serves requests on a localhost port, one thread per connection, until a shutdown request arrives.
+     * @param port The port; 0 picks a free one
+     * @throws IOException If the socket cannot be opened
+     */
+    public void serveSocket(int port) throws IOException {
+        ExecutorService connections = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            serverSocket = server;
+            System.out.printf("Parse service listening on %s:%d%n", server.getInetAddress().getHostAddress(), server.getLocalPort());
+            while (running) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (IOException e) {
+                    if (!running) break;
+                    throw e;
+                }
+                connections.submit(() -> {
+                    try (Socket s = socket) {
+                        serve(new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8)),
+                                new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)));
+                    } catch (IOException e) {
+                        System.err.println("Connection failed: " + e.getMessage());
+                    }
+                });
+            }
+        } finally {
+            connections.shutdownNow();
+        }
+    }
+
+    private void serve(BufferedReader in, BufferedWriter out) throws IOException {
+        JSONParser parser = new JSONParser();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        String line;
+        while (running && (line = in.readLine()) != null) {
+            if (line.trim().isEmpty()) continue;
+            writer.value(handle(parser, line));
+            out.newLine();
+            out.flush();
+        }
+    }
+
+    /**
+     * Handles one request line.
+     * @param parser JSON parser of the connection
+     * @param line The request
+     * @return The response
+     */
+    JSONObject handle(JSONParser parser, String line) {
+        JSONObject request;
+        try {
+            request = (JSONObject) parser.parse(line);
+        } catch (ParseException e) {
+            return error(null, PARSE_ERROR, "Invalid JSON: " + e);
+        } catch (ClassCastException e) {
+            return error(null, INVALID_REQUEST, "Request is not a JSON object");
+        }
+        Object id = request.get("id");
+        Object method = request.get("method");
+        JSONObject params = request.get("params") instanceof JSONObject ? (JSONObject) request.get("params") : new JSONObject();
+        if (!(method instanceof String)) {
+            return error(id, INVALID_REQUEST, "Missing method");
+        }
+
+        try {
+            switch ((String) method) {
+                case "parse":
+                    return parse(id, params);
+                case "shutdown":
+                    shutdown();
+                    return result(id, "ok");
+                default:
+                    return error(id, METHOD_NOT_FOUND, "Unknown method: " + method);
+            }
+        } catch (RuntimeException e) {
+            // One failed request must not end the service or the connection
+            return error(id, INTERNAL_ERROR, "Internal error: " + e);
+        }
+    }
+
+    private JSONObject parse(Object id, JSONObject params) {
+        for (String param : new String[] { "path", "source", "name" }) {
+            Object value = params.get(param);
+            if (value != null && !(value instanceof String)) {
+                return error(id, INVALID_PARAMS, "parse param " + param + " must be a string");
+            }
+        }
+        String path = (String) params.get("path");
+        String source = (String) params.get("source");
+        if (path == null && source == null) {
+            return error(id, INVALID_PARAMS, "parse needs a path or a source");
+        }
+        Path inputFile;
+        try {
+            inputFile = Paths.get(path != null ? path : (String) params.getOrDefault("name", "INLINE.cob"));
+        } catch (InvalidPathException e) {
+            return error(id, INVALID_PARAMS, "Invalid path: " + e.getMessage());
+        }
+
+        FileJob job = CobolJsonParser.processInMemory(inputFile, path != null ? null : source, preprocessor);
+        JSONArray errors = new JSONArray();
+        for (ParsingError error : job.errors) {
+            errors.add(error.toJson());
+        }
+        JSONObject parsed = new JSONObject();
+        parsed.put("output", job.program);
+        parsed.put("callGraph", job.callGraphMermaid);
+        parsed.put("dataFlow", job.dataFlowMermaid);
+        parsed.put("errors", errors);
+        return result(id, parsed);
+    }
+
+    private void shutdown() {
+        running = false;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    private static JSONObject result(Object id, Object result) {
+        JSONObject response = new JSONObject();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        response.put("result", result);
+        return response;
+    }
+
+    private static JSONObject error(Object id, int code, String message) {
+        JSONObject error = new JSONObject();
+        error.put("code", code);
+        error.put("message", message);
+        JSONObject response = new JSONObject();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        response.put("error", error);
+        return response;
+    }
+}
@@ -33,4 +33,13 @@ public class ParsingError {
         obj.put("line", line);
         return obj;
     }
+
+    /**
+     * Restores an error from its JSON form.
+     * @param obj JSONObject produced by {@link #toJson()}
+     * @return The parsing error
+     */
+    public static ParsingError fromJson(JSONObject obj) {
+        return new ParsingError((String) obj.get("file"), (String) obj.get("message"), ((Number) obj.get("line")).intValue());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+package cobol;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed on-disk cache of preprocessed sources.
+ * <p>
+ * An entry is keyed by the hash of the source together with the resolved path and content hash
+ * of every copybook it transitively includes. Because the included copybooks are only known
+ * after expansion, the dependency list of the last expansion is kept per source hash in a
+ * {@code <sourceHash>.deps} file; a lookup re-resolves those COPY names, re-hashes the copybooks
+ * and, if nothing changed, memory-maps the {@code <key>.pre} entry holding the expanded text,
+ * the included copybook names and the line number map. The returned context carries the COPY
+ * resolutions of the {@code .deps} file, just like a fresh expansion.
+ */
+public class PreprocessCache {
+    private static final int MAGIC = 0x43505031; // "CPP1"
+
+    private final Path cacheDir;
+    private final CopybookHashes copybookHashes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param cacheDir Directory holding the cache entries; created if missing
+     * @param copybookHashes Hashes of the copybooks of this run
+     * @throws IOException If the cache directory cannot be created
+     */
+    public PreprocessCache(Path cacheDir, CopybookHashes copybookHashes) throws IOException {
+        this.cacheDir = Files.createDirectories(cacheDir);
+        this.copybookHashes = copybookHashes;
+    }
+
+    /**
+     * Looks up the expansion of a source.
+     * @param source The unexpanded source
+     * @param resolver Resolver used to check that the recorded COPY names still resolve to the same files
+     * @return The cached preprocessing result, or null on a miss
+     */
+    public PreprocessingContext load(CharSequence source, CopybookResolver resolver) {
+        PreprocessingContext cached = lookup(source, resolver);
+        (cached != null ? hits : misses).incrementAndGet();
+        return cached;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private PreprocessingContext lookup(CharSequence source, CopybookResolver resolver) {
+        String sourceHash = ContentHash.of(source);
+        Path depsPath = cacheDir.resolve(sourceHash + ".deps");
+        if (!Files.exists(depsPath)) return null;
+
+        try {
+            String deps = new String(Files.readAllBytes(depsPath), StandardCharsets.UTF_8);
+            Map<String, String[]> resolutions = new LinkedHashMap<>();
+            for (String line : deps.split("\n")) {
+                if (line.isEmpty()) continue;
+                String[] fields = line.split("\t", -1);
+                resolutions.put(fields[0], new String[] {fields[1], fields[2]});
+            }
+            if (!copybookHashes.unchanged(resolutions, resolver)) return null;
+            Path entryPath = cacheDir.resolve(ContentHash.of(sourceHash + "\n" + deps) + ".pre");
+            if (!Files.exists(entryPath)) return null;
+            PreprocessingContext context = readEntry(entryPath);
+            // Restore the COPY resolutions so a cached result records the same dependencies as a fresh expansion
+            for (Map.Entry<String, String[]> resolution : resolutions.entrySet()) {
+                String path = resolution.getValue()[0];
+                context.recordResolution(resolution.getKey(), path.isEmpty() ? null : Paths.get(path));
+            }
+            return context;
+        } catch (IOException | RuntimeException e) {
+            // A damaged or stale entry is just a miss
+            return null;
+        }
+    }
+
+    /**
+     * Stores the expansion of a source.
+     * @param source The unexpanded source
+     * @param context The preprocessing result
+     */
+    public void store(CharSequence source, PreprocessingContext context) {
+        try {
+            String sourceHash = ContentHash.of(source);
+            StringBuilder deps = new StringBuilder();
+            for (Map.Entry<String, Path> resolution : context.getCopyResolutions().entrySet()) {
+                Path resolved = resolution.getValue();
+                deps.append(resolution.getKey()).append('\t')
+                        .append(resolved == null ? "" : resolved.toString()).append('\t')
+                        .append(resolved == null ? "" : copybookHashes.get(resolved)).append('\n');
+            }
+            Path entryPath = cacheDir.resolve(ContentHash.of(sourceHash + "\n" + deps) + ".pre");
+            writeAtomically(entryPath, encodeEntry(context));
+            writeAtomically(cacheDir.resolve(sourceHash + ".deps"), deps.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Cannot write preprocess cache entry: " + e.getMessage());
+        }
+    }
+
+    private static byte[] encodeEntry(PreprocessingContext context) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(context.getText().length() + 1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(context.getVisitedCopybooks().size());
+            for (String copybook : context.getVisitedCopybooks()) {
+                out.writeUTF(copybook);
+            }
+            out.writeInt(context.getLineNumberMap().size());
+            for (Integer line : context.getLineNumberMap()) {
+                out.writeInt(line);
+            }
+            byte[] text = context.getText().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(text.length);
+            out.write(text);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static PreprocessingContext readEntry(Path entryPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(entryPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a preprocess cache entry: " + entryPath);
+            }
+            PreprocessingContext context = new PreprocessingContext();
+            int copybooks = buffer.getInt();
+            for (int i = 0; i < copybooks; i++) {
+                context.getVisitedCopybooks().add(readUtf(buffer));
+            }
+            int lines = buffer.getInt();
+            for (int i = 0; i < lines; i++) {
+                context.getLineNumberMap().add(buffer.getInt());
+            }
+            int textLength = buffer.getInt();
+            ByteBuffer text = buffer.slice();
+            text.limit(textLength);
+            context.setText(StandardCharsets.UTF_8.decode(text).toString());
+            return context;
+        }
+    }
+
+    private static String readUtf(ByteBuffer buffer) {
+        // Names are plain file names, so modified UTF-8 and UTF-8 agree
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeAtomically(Path target, byte[] data) throws IOException {
+        Path temp = Files.createTempFile(cacheDir, "entry", ".tmp");
+        try {
+            Files.write(temp, data);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
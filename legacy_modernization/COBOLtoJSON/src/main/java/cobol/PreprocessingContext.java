@@ -0,0 +1,86 @@
+package cobol;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CodePointBuffer;
+import org.antlr.v4.runtime.CodePointCharStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Per-file state of a preprocessing run: the copybooks included so far, the line number map,
+ * and finally the expanded source. Each file gets its own context, so one
+ * {@link CobolPreprocessor} can be shared by all worker threads.
+ */
+public class PreprocessingContext {
+    private final Set<String> visitedCopybooks = new HashSet<>();
+    private final List<Integer> lineNumberMap = new ArrayList<>();
+    private final Map<String, Path> copyResolutions = new LinkedHashMap<>();
+    private boolean cacheable = true;
+    private String text;
+    private CodePointBuffer codePoints;
+
+    public Set<String> getVisitedCopybooks() {
+        return visitedCopybooks;
+    }
+
+    public List<Integer> getLineNumberMap() {
+        return lineNumberMap;
+    }
+
+    /**
+     * Gets the expanded source text. Text expanded in this run is held as code points and is
+     * copied into a string by this call; the lexer reads it through {@link #getCharStream()}.
+     * @return The preprocessed source
+     */
+    public String getText() {
+        if (text != null) return text;
+        CharStream stream = getCharStream();
+        return stream.getText(Interval.of(0, stream.size() - 1));
+    }
+
+    /**
+     * Gets a character stream over the expanded source for the lexer, sharing its storage.
+     * @return A new stream positioned at the start
+     */
+    public CharStream getCharStream() {
+        return codePoints != null ? CodePointCharStream.fromBuffer(codePoints) : CharStreams.fromString(text);
+    }
+
+    void setText(String text) {
+        this.text = text;
+        this.codePoints = null;
+    }
+
+    void setText(CodePointBuffer codePoints) {
+        this.codePoints = codePoints;
+        this.text = null;
+    }
+
+    /**
+     * Gets every COPY name met during expansion, including nested ones, and the file it
+     * resolved to, or null if it was missing. These determine whether a cached expansion is still valid.
+     * @return Map from COPY name to resolved file
+     */
+    public Map<String, Path> getCopyResolutions() {
+        return copyResolutions;
+    }
+
+    void recordResolution(String copyName, Path resolved) {
+        copyResolutions.put(copyName, resolved);
+    }
+
+    /**
+     * Whether the expansion may be cached; false if a copybook could not be read.
+     * @return true if the result is cacheable
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    void markUncacheable() {
+        cacheable = false;
+    }
+}
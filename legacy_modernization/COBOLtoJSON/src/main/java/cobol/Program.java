@@ -0,0 +1,124 @@
+package cobol;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The analysis results of one program, assembled once the analyses have finished. This is the
+ * document written to {@code <program>.json}; each section is written from the model as the
+ * file is produced. Fields are written in the order json-simple's hash-map objects gave them,
+ * so the files are the same as those written from the earlier JSON maps. Sections left out of
+ * the {@link OutputSections} selection are not written.
+ */
+public class Program implements JsonWritable {
+    final String programId;
+    final OutputSections selection;
+    Map<String, Paragraph> paragraphs = Collections.emptyMap();
+    Set<String> performCalls = Collections.emptySet();
+    Set<String> callStatements = Collections.emptySet();
+    List<ParsingError> errors = Collections.emptyList();
+    Map<String, DataItem> dataItems = Collections.emptyMap();
+    Set<String> divisions = Collections.emptySet();
+    Set<String> sections = Collections.emptySet();
+    List<Movement> movements = Collections.emptyList();
+    Set<String> copybooks = Collections.emptySet();
+    Map<String, FileDescription> fileDescriptions = Collections.emptyMap();
+    List<Statement> statements = Collections.emptyList();
+    Set<String> mainCalls = Collections.emptySet();
+    int complexity = 1;
+
+    public Program(String programId) {
+        this(programId, OutputSections.ALL);
+    }
+
+    /**
+     * @param programId Program ID
+     * @param selection Sections to write; the others are left out of the document
+     */
+    public Program(String programId, OutputSections selection) {
+        this.programId = programId;
+        this.selection = selection;
+    }
+
+    public String getProgramId() {
+        return programId;
+    }
+
+    @Override
+    public void writeJson(DocumentWriter out) throws IOException {
+        out.beginObject();
+        if (selection.has("complexity")) {
+            out.name("complexity").value(complexity);
+        }
+        if (selection.has("structuredStatements")) {
+            out.name("structuredStatements").beginObject().name("_MAIN").value(statements).endObject();
+        }
+        if (selection.has("callGraph")) {
+            out.name("callGraph").beginObject().name("_MAIN").array(mainCalls).endObject();
+        }
+
+        if (selection.has("paragraphOrigins")) {
+            out.name("paragraphOrigins").beginObject();
+            for (Map.Entry<String, Paragraph> entry : JsonStreamWriter.objectOrder(paragraphs)) {
+                out.name(entry.getKey()).value(entry.getValue().getOrigin());
+            }
+            out.endObject();
+        }
+
+        if (selection.has("workingStorage")) {
+            out.name("workingStorage").beginObject();
+            out.name("variables").array(dataItems.keySet());
+            out.name("dictionary").beginObject();
+            for (Map.Entry<String, DataItem> entry : JsonStreamWriter.objectOrder(dataItems)) {
+                out.name(entry.getKey()).value(entry.getValue().getDefinition());
+            }
+            out.endObject().endObject();
+        }
+
+        if (selection.has("paragraphs")) {
+            out.name("paragraphs").beginObject();
+            for (Map.Entry<String, Paragraph> entry : JsonStreamWriter.objectOrder(paragraphs)) {
+                out.name(entry.getKey()).value(entry.getValue());
+            }
+            out.endObject();
+        }
+
+        if (selection.has("structure")) {
+            out.name("structure").beginObject()
+                    .name("divisions").array(divisions)
+                    .name("sections").array(sections)
+                    .endObject();
+        }
+        if (selection.has("copybooks")) {
+            out.name("copybooks").array(copybooks);
+        }
+        if (selection.has("calls")) {
+            out.name("calls").beginObject()
+                    .name("CALL").array(callStatements)
+                    .name("PERFORM").array(performCalls)
+                    .endObject();
+        }
+
+        if (selection.has("fileDescriptions")) {
+            out.name("fileDescriptions").beginObject();
+            for (Map.Entry<String, FileDescription> entry : JsonStreamWriter.objectOrder(fileDescriptions)) {
+                out.name(entry.getKey()).value(entry.getValue());
+            }
+            out.endObject();
+        }
+
+        if (selection.has("dataMovement")) {
+            out.name("dataMovement").value(movements);
+        }
+        out.name("programId").value(programId);
+        out.name("errors").beginArray();
+        for (ParsingError error : errors) {
+            out.value(error.toJson());
+        }
+        out.endArray();
+        out.endObject();
+    }
+}
@@ -0,0 +1,116 @@
+package cobol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The analyses that together produce the outputs of one program. They are created as a set
+ * because variable tracking reads the declarations collected by working-storage extraction.
+ * Analyses that only feed output sections left out of the selection are not created; their
+ * fields are null.
+ */
+public class ProgramAnalyses {
+    final OutputSections sections;
+    final String programId;
+    final CobolJsonVisitor visitor;
+    final WorkingStorageVisitor wsVisitor;
+    final DivisionSectionVisitor structureVisitor;
+    final VariableTrackerVisitor variableVisitor;
+    final StructuredStatementTransformer transformer;
+
+    public ProgramAnalyses(String programId) {
+        this(programId, OutputSections.ALL);
+    }
+
+    /**
+     * @param programId Program ID derived from the file name
+     * @param sections Output sections to produce
+     */
+    public ProgramAnalyses(String programId, OutputSections sections) {
+        this.sections = sections;
+        this.programId = programId.toUpperCase();
+        visitor = sections.needsParagraphs() ? new CobolJsonVisitor() : null;
+        wsVisitor = sections.needsWorkingStorage() ? new WorkingStorageVisitor() : null;
+        structureVisitor = sections.needsStructure() ? new DivisionSectionVisitor() : null;
+        variableVisitor = sections.needsDataFlow() ? new VariableTrackerVisitor(wsVisitor.getDeclaredVariables()) : null;
+        transformer = sections.needsTransformer() ? new StructuredStatementTransformer() : null;
+        if (visitor != null) {
+            visitor.setProgramId(programId);
+        }
+    }
+
+    /**
+     * Gets the analyses in the order a fused walk dispatches to them.
+     * @return The analyses
+     */
+    public List<AnalysisVisitor> all() {
+        List<AnalysisVisitor> all = new ArrayList<>(5);
+        if (visitor != null) all.add(visitor);
+        if (wsVisitor != null) all.add(wsVisitor);
+        if (structureVisitor != null) all.add(structureVisitor);
+        if (variableVisitor != null) all.add(variableVisitor);
+        if (transformer != null) all.add(transformer);
+        return all;
+    }
+
+    public String getProgramId() {
+        return visitor != null ? visitor.getProgramId() : programId;
+    }
+
+    /**
+     * Collects the errors reported by the analyses.
+     * @return The errors
+     */
+    public List<ParsingError> getErrors() {
+        List<ParsingError> errors = new ArrayList<>();
+        if (visitor != null) errors.addAll(visitor.getErrors());
+        if (transformer != null) errors.addAll(transformer.getErrors());
+        return errors;
+    }
+
+    /**
+     * Assembles the program model once the analyses have run, structuring the statements of the
+     * main paragraph if a section needs them. Copybooks are taken from the preprocessing.
+     * @param preprocessing Preprocessing of the program
+     * @return The program
+     */
+    Program toProgram(PreprocessingContext preprocessing) {
+        Program program = new Program(getProgramId(), sections);
+        if (sections.needsStatements()) {
+            Paragraph main = visitor.getParagraphMap().get("_MAIN");
+            StructuredStatementTransformer.TransformationResult result = transformer.transformParagraph(
+                    main != null ? main : new Paragraph("_MAIN", programId), new StructuredStatementTransformer.ContextMetadata("_MAIN", programId));
+            program.statements = result.statements;
+            program.mainCalls = result.callGraph.getOrDefault("_MAIN", Collections.emptySet());
+            program.complexity = result.cyclomaticComplexity;
+        }
+        if (visitor != null) {
+            program.paragraphs = visitor.getParagraphMap();
+            program.performCalls = visitor.getPerformCalls();
+            program.callStatements = visitor.getCallStatements();
+            program.errors = visitor.getErrors();
+        }
+        if (wsVisitor != null) {
+            program.dataItems = wsVisitor.getDataItems();
+        }
+        if (structureVisitor != null) {
+            program.divisions = structureVisitor.getDivisions();
+            program.sections = structureVisitor.getSections();
+        }
+        if (variableVisitor != null) {
+            program.movements = variableVisitor.getMovements();
+        }
+        if (transformer != null) {
+            program.fileDescriptions = transformer.getFileDescriptions();
+        }
+        if (sections.has("copybooks")) {
+            Set<String> copybooks = new HashSet<>();
+            copybooks.addAll(preprocessing.getVisitedCopybooks());
+            program.copybooks = copybooks;
+        }
+        return program;
+    }
+}
@@ -0,0 +1,183 @@
+package cobol;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * How source files and copybooks are decoded: a character set and, for mainframe data sets with
+ * fixed-length records (RECFM=F or FB), the record length. Single-byte code pages such as the
+ * EBCDIC pages IBM-037 and IBM-1140 are decoded through a 256-entry table; the tables of those
+ * two are built in, so they work on runtimes without the extended charsets. Records are turned
+ * into lines: trailing blanks, which pad every record, are dropped and a newline is added.
+ */
+public class SourceEncoding {
+    public static final SourceEncoding UTF_8 = new SourceEncoding("UTF-8", StandardCharsets.UTF_8, null, 0);
+
+    /** IBM-037 (EBCDIC US/Canada) by byte value, as mapped by the JDK's IBM037 charset. */
+    private static final String IBM_037 =
+            "\u0000\u0001\u0002\u0003\u009C\u0009\u0086\u007F\u0097\u008D\u008E\u000B\u000C\r\u000E\u000F" +
+            "\u0010\u0011\u0012\u0013\u009D\n\u0008\u0087\u0018\u0019\u0092\u008F\u001C\u001D\u001E\u001F" +
+            "\u0080\u0081\u0082\u0083\u0084\n\u0017\u001B\u0088\u0089\u008A\u008B\u008C\u0005\u0006\u0007" +
+            "\u0090\u0091\u0016\u0093\u0094\u0095\u0096\u0004\u0098\u0099\u009A\u009B\u0014\u0015\u009E\u001A" +
+            "\u0020\u00A0\u00E2\u00E4\u00E0\u00E1\u00E3\u00E5\u00E7\u00F1\u00A2\u002E\u003C\u0028\u002B\u007C" +
+            "\u0026\u00E9\u00EA\u00EB\u00E8\u00ED\u00EE\u00EF\u00EC\u00DF\u0021\u0024\u002A\u0029\u003B\u00AC" +
+            "\u002D\u002F\u00C2\u00C4\u00C0\u00C1\u00C3\u00C5\u00C7\u00D1\u00A6\u002C\u0025\u005F\u003E\u003F" +
+            "\u00F8\u00C9\u00CA\u00CB\u00C8\u00CD\u00CE\u00CF\u00CC\u0060\u003A\u0023\u0040\u0027\u003D\"" +
+            "\u00D8\u0061\u0062\u0063\u0064\u0065\u0066\u0067\u0068\u0069\u00AB\u00BB\u00F0\u00FD\u00FE\u00B1" +
+            "\u00B0\u006A\u006B\u006C\u006D\u006E\u006F\u0070\u0071\u0072\u00AA\u00BA\u00E6\u00B8\u00C6\u00A4" +
+            "\u00B5\u007E\u0073\u0074\u0075\u0076\u0077\u0078\u0079\u007A\u00A1\u00BF\u00D0\u00DD\u00DE\u00AE" +
+            "\u005E\u00A3\u00A5\u00B7\u00A9\u00A7\u00B6\u00BC\u00BD\u00BE\u005B\u005D\u00AF\u00A8\u00B4\u00D7" +
+            "\u007B\u0041\u0042\u0043\u0044\u0045\u0046\u0047\u0048\u0049\u00AD\u00F4\u00F6\u00F2\u00F3\u00F5" +
+            "\u007D\u004A\u004B\u004C\u004D\u004E\u004F\u0050\u0051\u0052\u00B9\u00FB\u00FC\u00F9\u00FA\u00FF" +
+            "\\\u00F7\u0053\u0054\u0055\u0056\u0057\u0058\u0059\u005A\u00B2\u00D4\u00D6\u00D2\u00D3\u00D5" +
+            "\u0030\u0031\u0032\u0033\u0034\u0035\u0036\u0037\u0038\u0039\u00B3\u00DB\u00DC\u00D9\u00DA\u009F";
+
+    private final String name;
+    private final Charset charset;
+    private final char[] table;
+    private final int recordLength;
+
+    private SourceEncoding(String name, Charset charset, char[] table, int recordLength) {
+        this.name = name;
+        this.charset = charset;
+        this.table = table;
+        this.recordLength = recordLength;
+    }
+
+    /**
+     * Looks up an encoding.
+     * @param name IBM-037 or IBM-1140 (also spelled IBM037, CP037, IBM01140, CP1140), or any
+     *             charset name known to the JVM
+     * @param recordLength Length of fixed records in bytes, e.g. 80; 0 if lines end with newlines
+     * @return The encoding
+     * @throws IllegalArgumentException If the charset is unknown or the record length is negative
+     */
+    public static SourceEncoding of(String name, int recordLength) {
+        if (recordLength < 0) {
+            throw new IllegalArgumentException("recordLength must not be negative: " + recordLength);
+        }
+        switch (name.toUpperCase(Locale.ROOT).replace("-", "").replace("_", "")) {
+            case "IBM037":
+            case "CP037":
+                return new SourceEncoding("IBM-037", null, IBM_037.toCharArray(), recordLength);
+            case "IBM1140":
+            case "IBM01140":
+            case "CP1140":
+            case "CP01140":
+                char[] table = IBM_037.toCharArray();
+                table[0x9F] = '\u20AC'; // the euro sign replaces the currency sign
+                return new SourceEncoding("IBM-1140", null, table, recordLength);
+            default:
+                Charset charset = Charset.forName(name);
+                return new SourceEncoding(charset.name(), charset, singleByteTable(charset), recordLength);
+        }
+    }
+
+    /**
+     * Builds the decoding table of a charset that maps every byte to exactly one char.
+     * @return The table, or null for multi-byte charsets such as UTF-8
+     */
+    private static char[] singleByteTable(Charset charset) {
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1.0f) return null;
+        char[] table = new char[256];
+        for (int b = 0; b < 256; b++) {
+            String decoded = new String(new byte[] {(byte) b}, charset);
+            if (decoded.length() != 1) return null;
+            table[b] = decoded.charAt(0);
+        }
+        return table;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRecordLength() {
+        return recordLength;
+    }
+
+    /**
+     * Gets the largest number of chars that {@link #decode} can produce.
+     * @param bytes Number of encoded bytes
+     * @return Buffer capacity needed for the decoded text
+     */
+    int maxChars(int bytes) {
+        long chars = table != null ? bytes : (long) Math.ceil(charset.newDecoder().maxCharsPerByte() * (double) bytes);
+        if (recordLength > 0) chars += bytes / recordLength + 1;
+        return (int) Math.min(Integer.MAX_VALUE, chars);
+    }
+
+    /**
+     * Decodes bytes, replacing malformed and unmappable input.
+     * @param in The encoded text; read to its end
+     * @param out Array-backed buffer with at least {@link #maxChars} chars remaining
+     * @throws CharacterCodingException If the charset decoder fails
+     */
+    void decode(ByteBuffer in, CharBuffer out) throws CharacterCodingException {
+        if (table != null) {
+            decodeTable(in, out);
+        } else if (recordLength == 0) {
+            decodeCharset(in, out);
+        } else {
+            while (in.hasRemaining()) {
+                ByteBuffer record = in.duplicate();
+                record.limit(Math.min(in.limit(), in.position() + recordLength));
+                in.position(record.limit());
+                boolean full = record.remaining() == recordLength;
+                int recordStart = out.position();
+                decodeCharset(record, out);
+                endRecord(out, recordStart, full);
+            }
+        }
+    }
+
+    private void decodeTable(ByteBuffer in, CharBuffer out) {
+        byte[] chunk = new byte[8192];
+        char[] chars = out.array();
+        int base = out.arrayOffset();
+        int pos = base + out.position();
+        int recordStart = pos;
+        int column = 0;
+        while (in.hasRemaining()) {
+            int n = Math.min(chunk.length, in.remaining());
+            in.get(chunk, 0, n);
+            for (int i = 0; i < n; i++) {
+                chars[pos++] = table[chunk[i] & 0xFF];
+                if (recordLength > 0 && ++column == recordLength) {
+                    while (pos > recordStart && chars[pos - 1] == ' ') pos--;
+                    chars[pos++] = '\n';
+                    recordStart = pos;
+                    column = 0;
+                }
+            }
+        }
+        if (column > 0) {
+            while (pos > recordStart && chars[pos - 1] == ' ') pos--; // short last record
+        }
+        out.position(pos - base);
+    }
+
+    private void decodeCharset(ByteBuffer in, CharBuffer out) throws CharacterCodingException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CoderResult result = decoder.decode(in, out, true);
+        if (!result.isUnderflow()) result.throwException();
+        result = decoder.flush(out);
+        if (!result.isUnderflow()) result.throwException();
+    }
+
+    private void endRecord(CharBuffer out, int recordStart, boolean full) {
+        int pos = out.position();
+        while (pos > recordStart && out.get(pos - 1) == ' ') pos--;
+        out.position(pos);
+        if (full) out.put('\n');
+    }
+}
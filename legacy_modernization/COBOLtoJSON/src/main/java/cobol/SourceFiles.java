@@ -0,0 +1,111 @@
+package cobol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Loads COBOL sources and copybooks without intermediate copies. A file is memory-mapped, so
+ * reading it costs no heap, and decoded once into a pooled char buffer that is reused for the
+ * next file; the preprocessor scans that buffer in place. Files are decoded with the configured
+ * {@link SourceEncoding}, UTF-8 unless set otherwise; malformed input is replaced the same way
+ * as by {@code new String(bytes, charset)}.
+ */
+public class SourceFiles {
+    private static final int POOLED_BUFFERS = 8;
+    private static final int MAX_POOLED_CHARS = 16 * 1024 * 1024;
+    private static final BlockingQueue<CharBuffer> POOL = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+    private static volatile SourceEncoding encoding = SourceEncoding.UTF_8;
+
+    /**
+     * Something done with decoded source text while the buffer holding it is borrowed.
+     */
+    public interface TextHandler<T> {
+        /**
+         * @param text The decoded text; only valid during the call
+         * @return The result of handling the text
+         * @throws IOException If handling fails
+         */
+        T handle(CharBuffer text) throws IOException;
+    }
+
+    public static SourceEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Sets the encoding of all sources and copybooks read from now on.
+     * @param sourceEncoding The encoding
+     */
+    public static void setEncoding(SourceEncoding sourceEncoding) {
+        encoding = sourceEncoding;
+    }
+
+    /**
+     * Maps a file read-only into memory. The mapping stays valid after the file is closed.
+     * @param path The file
+     * @return The file contents
+     * @throws IOException If the file cannot be opened or is larger than 2 GB
+     */
+    public static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to map (" + size + " bytes)");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Decodes bytes into a pooled buffer and hands the text to a handler.
+     * @param bytes The encoded text; its position is not changed
+     * @param handler Uses the text; it must not keep a reference to it
+     * @return The handler's result
+     * @throws IOException If the handler fails
+     */
+    public static <T> T decode(ByteBuffer bytes, TextHandler<T> handler) throws IOException {
+        SourceEncoding sourceEncoding = encoding;
+        CharBuffer text = borrow(sourceEncoding.maxChars(bytes.remaining()));
+        try {
+            sourceEncoding.decode(bytes.duplicate(), text);
+            text.flip();
+            return handler.handle(text);
+        } catch (CharacterCodingException e) {
+            throw new IOException("Cannot decode source: " + e, e);
+        } finally {
+            giveBack(text);
+        }
+    }
+
+    /**
+     * Reads a whole file as a string, for text that is kept, such as cached copybooks.
+     * @param path The file
+     * @return The decoded contents
+     * @throws IOException If the file cannot be read
+     */
+    public static String read(Path path) throws IOException {
+        return decode(map(path), CharBuffer::toString);
+    }
+
+    private static CharBuffer borrow(int chars) {
+        CharBuffer buffer = POOL.poll();
+        if (buffer == null || buffer.capacity() < chars) {
+            buffer = CharBuffer.allocate(Math.max(chars, 8192));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static void giveBack(CharBuffer buffer) {
+        if (buffer.capacity() <= MAX_POOLED_CHARS) {
+            POOL.offer(buffer);
+        }
+    }
+}
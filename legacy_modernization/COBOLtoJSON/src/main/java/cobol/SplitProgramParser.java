@@ -0,0 +1,215 @@
+package cobol;
+
+import cobol.antlr.Cobol85Lexer;
+import cobol.antlr.Cobol85Parser;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses a large program on several cores by splitting its PROCEDURE DIVISION at paragraph
+ * boundaries, or only at section boundaries if the body has sections, so that no chunk starts
+ * inside a section and loses its procedureSection node. Everything up to and including the PROCEDURE DIVISION header is
+ * parsed once with the start rule, which gives the DATA DIVISION and an empty procedure body.
+ * Each body chunk is parsed in parallel with the procedureDivisionBody rule, with its lexer
+ * started at the chunk's first line so that token line numbers match a whole-file parse.
+ * Walking the head and then the chunks in order visits the same rule nodes, in the same order,
+ * as a walk of the whole-file tree.
+ * <p>
+ * Splitting is conservative: programs with nested programs, END PROGRAM or DECLARATIVES are
+ * not split, and if any part has a lexer or syntax error, or a chunk does not parse to its
+ * end, the caller falls back to a whole-file parse so that error reporting is unchanged.
+ */
+public class SplitProgramParser {
+    private static final Pattern PARAGRAPH_HEADER = Pattern.compile("([A-Za-z0-9][A-Za-z0-9-]*)\\s*\\.");
+    private static final Pattern SECTION_HEADER = Pattern.compile("([A-Za-z0-9][A-Za-z0-9-]*)\\s+SECTION(\\s+\\d+)?\\s*\\.", Pattern.CASE_INSENSITIVE);
+    private static final Set<String> RESERVED_WORDS = reservedWords();
+
+    private final int chunkLines;
+    private final boolean twoStage;
+
+    /**
+     * @param chunkLines Minimum number of lines per body chunk; consecutive paragraphs, or sections, are grouped until they reach it
+     * @param twoStage Whether each part is parsed with SLL before falling back to LL
+     */
+    public SplitProgramParser(int chunkLines, boolean twoStage) {
+        this.chunkLines = Math.max(1, chunkLines);
+        this.twoStage = twoStage;
+    }
+
+    /**
+     * Splits and parses a preprocessed program.
+     * @param source The preprocessed source
+     * @return The head and body segments in source order, or null if the program was not split
+     *         or did not parse cleanly; the caller should then parse the whole file
+     * @throws InterruptedException If interrupted while waiting for the chunk parses
+     */
+    public List<ParseSegment> parse(String source) throws InterruptedException {
+        List<int[]> parts = split(source);
+        if (parts == null) {
+            return null;
+        }
+
+        // Pool threads are not interrupted by cancel(), so running chunks watch this flag instead
+        AtomicBoolean stopped = new AtomicBoolean();
+        List<Future<ParseSegment>> chunks = new ArrayList<>();
+        for (int i = 1; i < parts.size(); i++) {
+            int[] part = parts.get(i);
+            String text = source.substring(part[0], part[1]);
+            chunks.add(ConcurrentAnalysisRunner.pool().submit(() -> parsePart(text, part[2], Cobol85Parser::procedureDivisionBody, stopped)));
+        }
+
+        int[] head = parts.get(0);
+        List<ParseSegment> segments = new ArrayList<>();
+        try {
+            ParseSegment headSegment = parsePart(source.substring(head[0], head[1]), head[2], Cobol85Parser::startRule, stopped);
+            if (headSegment == null) return null;
+            segments.add(headSegment);
+            for (Future<ParseSegment> chunk : chunks) {
+                ParseSegment segment = chunk.get();
+                if (segment == null) return null;
+                segments.add(segment);
+            }
+        } catch (ExecutionException e) {
+            return null;
+        } finally {
+            if (segments.size() < parts.size()) {
+                // After a failure, timeout or shutdown: stop the running chunks and skip the rest
+                stopped.set(true);
+                for (Future<ParseSegment> chunk : chunks) {
+                    chunk.cancel(false);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Finds the head and chunk boundaries.
+     * @param source The preprocessed source
+     * @return List of {startOffset, endOffset, firstLine} with the head first, or null if the program should not be split
+     */
+    private List<int[]> split(String source) {
+        List<int[]> lines = new ArrayList<>();
+        for (int start = 0; start < source.length(); ) {
+            int end = source.indexOf('\n', start);
+            end = end < 0 ? source.length() : end + 1;
+            lines.add(new int[]{start, end});
+            start = end;
+        }
+
+        int header = -1;
+        int bodyStart = -1;
+        for (int i = 0; i < lines.size(); i++) {
+            String text = lineText(source, lines.get(i));
+            if (text.isEmpty() || text.startsWith("*>")) continue;
+            String upper = text.toUpperCase();
+            if (upper.startsWith("PROCEDURE DIVISION")) {
+                if (header >= 0) return null;
+                header = i;
+            }
+            if (header >= 0 && (upper.startsWith("END PROGRAM") || upper.startsWith("DECLARATIVES")
+                    || upper.startsWith("IDENTIFICATION DIVISION") || upper.startsWith("ID DIVISION"))) {
+                return null;
+            }
+            if (header >= 0 && bodyStart < 0 && text.endsWith(".")) {
+                bodyStart = i + 1;
+            }
+        }
+        if (bodyStart < 0 || bodyStart >= lines.size()) {
+            return null;
+        }
+
+        boolean sections = false;
+        for (int i = bodyStart; i < lines.size() && !sections; i++) {
+            sections = SECTION_HEADER.matcher(lineText(source, lines.get(i))).matches();
+        }
+
+        List<int[]> parts = new ArrayList<>();
+        parts.add(new int[]{0, lines.get(bodyStart)[0], 1});
+        int chunkStart = bodyStart;
+        boolean previousTerminated = true;
+        for (int i = bodyStart; i < lines.size(); i++) {
+            String text = lineText(source, lines.get(i));
+            if (text.isEmpty() || text.startsWith("*>")) continue;
+            if (previousTerminated && i - chunkStart >= chunkLines && isBoundary(text, sections)) {
+                parts.add(new int[]{lines.get(chunkStart)[0], lines.get(i)[0], chunkStart + 1});
+                chunkStart = i;
+            }
+            previousTerminated = text.endsWith(".");
+        }
+        parts.add(new int[]{lines.get(chunkStart)[0], source.length(), chunkStart + 1});
+
+        // The head plus one chunk gains little over a whole-file parse
+        return parts.size() > 2 ? parts : null;
+    }
+
+    private static String lineText(String source, int[] line) {
+        return source.substring(line[0], line[1]).trim();
+    }
+
+    /**
+     * Checks whether a line is a section header or, in a body without sections, a paragraph header.
+     * A lone word that is not a reserved word cannot be a statement, so after a terminated
+     * sentence it must start a paragraph.
+     */
+    private static boolean isBoundary(String text, boolean sections) {
+        if (SECTION_HEADER.matcher(text).matches()) {
+            return true;
+        }
+        if (sections) {
+            return false;
+        }
+        Matcher m = PARAGRAPH_HEADER.matcher(text);
+        return m.matches() && !RESERVED_WORDS.contains(m.group(1).toUpperCase());
+    }
+
+    private ParseSegment parsePart(String text, int firstLine, Function<Cobol85Parser, ? extends ParseTree> entryRule,
+                                   AtomicBoolean stopped) {
+        ErrorCounter errorCounter = new ErrorCounter();
+        Cobol85Lexer lexer = new Cobol85Lexer(CharStreams.fromString(text));
+        lexer.setLine(firstLine);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errorCounter);
+        CommonTokenStream tokens = new CancellableTokenStream(lexer, stopped::get);
+        Cobol85Parser parser = new Cobol85Parser(tokens);
+
+        TwoStageParser.Result parsed = TwoStageParser.parse(parser, tokens, errorCounter, twoStage, entryRule);
+        if (errorCounter.count > 0 || parser.getNumberOfSyntaxErrors() > 0 || tokens.LA(1) != Token.EOF) {
+            return null;
+        }
+        return new ParseSegment(parsed.tree, tokens, parsed.stage);
+    }
+
+    private static Set<String> reservedWords() {
+        Set<String> words = new HashSet<>();
+        Vocabulary vocabulary = Cobol85Lexer.VOCABULARY;
+        for (int type = 1; type <= vocabulary.getMaxTokenType(); type++) {
+            String name = vocabulary.getSymbolicName(type);
+            if (name != null) {
+                words.add(name.replaceAll("_+$", "").replace('_', '-'));
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Counts lexer and parser errors for one part without reporting them.
+     */
+    private static class ErrorCounter extends BaseErrorListener {
+        private int count;
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine,
+                                String msg, RecognitionException e) {
+            count++;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package cobol;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Builds a class-data-sharing (AppCDS) archive for the packaged jar. Most of the startup time
+ * goes into loading and verifying the generated parser classes; a JVM started from the archive
+ * maps them in already parsed and verified. The archive is recorded by a child JVM parsing a
+ * sample, so it holds the classes a real run needs, and is written next to the jar, where the
+ * {@code cobol-json-parser} launcher picks it up. Dynamic archives need Java 13 or later, and the
+ * archive only applies to the JVM that recorded it and to the jar as it was at that time.
+ */
+public class StartupTrainer {
+    private static final int BENCHMARK_RUNS = 3;
+
+    private final Path jar;
+    private final Path archive;
+    private final Path sample;
+    private final Path includeDir;
+
+    /**
+     * @param sample COBOL file or folder parsed while recording
+     * @param includeDir Copybook directory for the sample, or null
+     * @throws IOException If not running from the packaged jar or on a JVM without dynamic archives
+     */
+    public StartupTrainer(Path sample, Path includeDir) throws IOException {
+        this.jar = locateJar();
+        this.archive = archiveFor(jar);
+        this.sample = sample;
+        this.includeDir = includeDir;
+        if (javaVersion() < 13) {
+            throw new IOException("class-data-sharing archives of application classes need Java 13 or later");
+        }
+    }
+
+    /**
+     * Gets the archive location the launcher checks for a jar.
+     * @param jar The packaged jar
+     * @return The archive path: the jar name with a .jsa extension
+     */
+    public static Path archiveFor(Path jar) {
+        return jar.resolveSibling(jar.getFileName().toString().replaceAll("\\.jar$", "") + ".jsa");
+    }
+
+    /**
+     * Records the archive by parsing the sample in a child JVM.
+     * @return The archive
+     * @throws IOException If the sample run fails or writes no archive
+     * @throws InterruptedException If interrupted while waiting for the child JVM
+     */
+    public Path train() throws IOException, InterruptedException {
+        Files.deleteIfExists(archive);
+        long millis = runSample(Collections.singletonList("-XX:ArchiveClassesAtExit=" + archive));
+        if (!Files.exists(archive)) {
+            throw new IOException("the sample run wrote no archive");
+        }
+        System.out.printf("Startup archive %s written (%d KB, sample run %d ms)%n", archive, Files.size(archive) / 1024, millis);
+        return archive;
+    }
+
+    /**
+     * Runs the sample several times with and without the archive and prints the best wall-clock
+     * time of each, which is dominated by startup for a small sample. If the archive does not
+     * make the sample faster it is removed, so that the launcher does not use it; this happens
+     * on some JVM and garbage collector combinations that cannot map all of the archive.
+     * @throws IOException If a sample run fails
+     * @throws InterruptedException If interrupted while waiting for a child JVM
+     */
+    public void benchmark() throws IOException, InterruptedException {
+        long cold = Long.MAX_VALUE;
+        long archived = Long.MAX_VALUE;
+        for (int i = 0; i < BENCHMARK_RUNS; i++) {
+            cold = Math.min(cold, runSample(Collections.emptyList()));
+            archived = Math.min(archived, runSample(Arrays.asList("-XX:SharedArchiveFile=" + archive, "-Xshare:auto")));
+        }
+        System.out.printf("Startup benchmark (best of %d): %d ms without archive, %d ms with archive, %d ms saved (%.0f%%)%n",
+                BENCHMARK_RUNS, cold, archived, cold - archived, cold == 0 ? 0.0 : 100.0 * (cold - archived) / cold);
+        if (archived >= cold) {
+            Files.deleteIfExists(archive);
+            System.out.println("Startup archive removed: it does not shorten startup on this JVM");
+        }
+    }
+
+    /**
+     * Parses the sample in a child JVM into a scratch output folder.
+     * @param jvmOptions Extra options for the child JVM
+     * @return The wall-clock time of the child in milliseconds
+     * @throws IOException If the child cannot be started or fails
+     * @throws InterruptedException If interrupted while waiting for the child
+     */
+    private long runSample(List<String> jvmOptions) throws IOException, InterruptedException {
+        Path scratch = Files.createTempDirectory("cobol-startup");
+        Path log = scratch.resolve("run.log");
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-jar");
+        command.add(jar.toString());
+        command.add(sample.toString());
+        command.add(scratch.resolve("out").toString());
+        if (includeDir != null) command.add(includeDir.toString());
+        try {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+            int exit = process.waitFor();
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (exit != 0) {
+                List<String> lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+                throw new IOException("sample run exited with " + exit + ": "
+                        + String.join(System.lineSeparator(), lines.subList(Math.max(0, lines.size() - 5), lines.size())));
+            }
+            return millis;
+        } finally {
+            deleteRecursively(scratch);
+        }
+    }
+
+    private static Path locateJar() throws IOException {
+        try {
+            Path location = Paths.get(StartupTrainer.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isRegularFile(location) && location.toString().endsWith(".jar")) {
+                return location;
+            }
+        } catch (URISyntaxException | SecurityException e) {
+            // fall through
+        }
+        throw new IOException("--train-startup must be run from the packaged jar");
+    }
+
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package cobol;
+
+import org.json.simple.JSONArray;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A structured statement: one statement of the procedure division with the statements nested in
+ * its THEN and ELSE blocks or WHEN cases. The metadata fields are set by the transformer for the
+ * statements that have them; the pseudocode is derived from them when the statement is written.
+ */
+public class Statement implements JsonWritable {
+    final String type;
+    final int line;
+    final String content;
+    final List<Statement> thenBlock;
+    final List<Statement> elseBlock;
+    final List<Statement> cases;
+
+    // Metadata
+    String target;
+    String thru;
+    String varying;
+    String program;
+    List<String> parameters;
+    String file;
+    String record;
+    FileDescription fd;
+
+    /**
+     * Creates a statement; IF and PERFORM get a THEN block, IF an ELSE block and EVALUATE a list of cases.
+     * @param type Statement keyword
+     * @param line Line number
+     * @param content Statement text, or null
+     */
+    public Statement(String type, int line, String content) {
+        this.type = type;
+        this.line = line;
+        this.content = content;
+        this.thenBlock = type.equals("IF") || type.equals("PERFORM") ? new ArrayList<>() : null;
+        this.elseBlock = type.equals("IF") ? new ArrayList<>() : null;
+        this.cases = type.equals("EVALUATE") ? new ArrayList<>() : null;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public List<Statement> getThenBlock() {
+        return thenBlock;
+    }
+
+    public List<Statement> getElseBlock() {
+        return elseBlock;
+    }
+
+    public List<Statement> getCases() {
+        return cases;
+    }
+
+    private boolean hasMetadata() {
+        return target != null || thru != null || varying != null || program != null || parameters != null
+                || file != null || record != null || fd != null;
+    }
+
+    /**
+     * Renders the statement as C-like pseudocode.
+     * @return The pseudocode line
+     */
+    public String getPseudocode() {
+        switch (type) {
+            case "MOVE":
+                String[] moveParts = content.split("\\s+TO\\s+", 2);
+                if (moveParts.length == 2) {
+                    return moveParts[1] + " = " + moveParts[0].replace("MOVE ", "") + ";";
+                }
+                break;
+            case "IF":
+                return "if (" + content.replace("IF ", "") + ") {";
+            case "ELSE":
+                return "} else {";
+            case "END-IF":
+                return "}";
+            case "PERFORM":
+                if (varying != null && !varying.isEmpty()) {
+                    return "for (" + varying + ") {";
+                } else if (thru != null && !thru.isEmpty()) {
+                    return "call " + (target != null ? target : "") + " thru " + thru + ";";
+                } else {
+                    return "call " + content.replace("PERFORM ", "") + ";";
+                }
+            case "CALL":
+                List<String> params = parameters != null ? parameters : Collections.<String>emptyList();
+                return "call_program(" + (program != null ? program : "") + "(" + JSONArray.toJSONString(params) + "));";
+            case "ADD":
+                return content.replace("ADD ", "") + ";";
+            case "SUBTRACT":
+                return content.replace("SUBTRACT ", "") + ";";
+            case "READ":
+                return "read_file(" + content.replace("READ ", "") + ");";
+            case "WRITE":
+                return "write_file(" + content.replace("WRITE ", "") + ");";
+            case "OPEN":
+                return "open_file(" + content.replace("OPEN ", "") + ");";
+            case "CLOSE":
+                return "close_file(" + content.replace("CLOSE ", "") + ");";
+            case "INSPECT":
+                return "inspect(" + content.replace("INSPECT ", "") + ");";
+            case "EVALUATE":
+                return "switch (" + content.replace("EVALUATE ", "") + ") {";
+            case "WHEN":
+                return "case " + content.replace("WHEN ", "") + ":";
+            case "END-EVALUATE":
+                return "}";
+            case "END-PERFORM":
+                return "}";
+            case "GO TO":
+                return "goto " + (target != null ? target : "") + ";";
+            default:
+                return content + ";";
+        }
+        return content + ";";
+    }
+
+    @Override
+    public void writeJson(DocumentWriter out) throws IOException {
+        out.beginObject();
+        if (hasMetadata()) {
+            out.name("metadata");
+            writeMetadata(out);
+        }
+        if (cases != null) {
+            out.name("cases").value(cases);
+        }
+        out.name("pseudocode").value(getPseudocode());
+        out.name("line").value(line);
+        if (elseBlock != null) {
+            out.name("else").value(elseBlock);
+        }
+        if (thenBlock != null) {
+            out.name("then").value(thenBlock);
+        }
+        out.name("type").value(type);
+        if (content != null) {
+            out.name("content").value(content);
+        }
+        out.endObject();
+    }
+
+    private void writeMetadata(DocumentWriter out) throws IOException {
+        out.beginObject();
+        if (thru != null) out.name("thru").value(thru);
+        if (file != null) out.name("file").value(file);
+        if (varying != null) out.name("varying").value(varying);
+        if (record != null) out.name("record").value(record);
+        if (program != null) out.name("program").value(program);
+        if (parameters != null) out.name("parameters").value(parameters);
+        if (fd != null) out.name("fd").value(fd);
+        if (target != null) out.name("target").value(target);
+        out.endObject();
+    }
+}
@@ -0,0 +1,152 @@
+package cobol;
+
+import cobol.antlr.Cobol85Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Runs the analyses from parse events while the parser runs without building a parse tree, so
+ * that a program never exists as one tree. Rules that only give the program its outline
+ * (divisions, sections, paragraphs) are dispatched as the parser enters and leaves them. Every
+ * other rule directly below them is a unit, such as a sentence or a data description entry: its
+ * subtree is kept while it is parsed, walked with the analyses when the rule exits, and then
+ * dropped. Memory therefore grows with the largest unit instead of with the program.
+ * <p>
+ * The analyses see the same nodes in the same order as in a {@link FusedTreeWalker} walk. The
+ * enter of an outline rule is held back until its first unit is complete, so that, for example,
+ * the name of a paragraph is attached when the paragraph is visited. Outline rules keep only
+ * their own tokens as children.
+ */
+public class StreamingTreeWalker implements ParseTreeListener {
+    private static final Set<Integer> OUTLINE_RULES = new HashSet<>(Arrays.asList(
+            Cobol85Parser.RULE_startRule,
+            Cobol85Parser.RULE_compilationUnit,
+            Cobol85Parser.RULE_programUnit,
+            Cobol85Parser.RULE_dataDivision,
+            Cobol85Parser.RULE_dataDivisionSection,
+            Cobol85Parser.RULE_fileSection,
+            Cobol85Parser.RULE_workingStorageSection,
+            Cobol85Parser.RULE_linkageSection,
+            Cobol85Parser.RULE_localStorageSection,
+            Cobol85Parser.RULE_procedureDivision,
+            Cobol85Parser.RULE_procedureDivisionBody,
+            Cobol85Parser.RULE_procedureSection,
+            Cobol85Parser.RULE_paragraphs,
+            Cobol85Parser.RULE_paragraph));
+
+    private final TokenStream tokens;
+    private final Supplier<ProgramAnalyses> factory;
+    private final List<ParserRuleContext> open = new ArrayList<>();
+    private ProgramAnalyses analyses;
+    private FusedTreeWalker dispatcher;
+    private int entered;
+    private int unitDepth;
+    private RuntimeException failure;
+
+    /**
+     * @param tokens The token stream being parsed, announced to the analyses as a single segment
+     * @param factory Creates the analyses, again whenever the parse starts over
+     */
+    public StreamingTreeWalker(TokenStream tokens, Supplier<ProgramAnalyses> factory) {
+        this.tokens = tokens;
+        this.factory = factory;
+        reset();
+    }
+
+    /**
+     * Discards everything the analyses have seen, for when the parser starts over from the
+     * first token, as after a failed SLL stage.
+     */
+    public void restart() {
+        reset();
+    }
+
+    private void reset() {
+        analyses = factory.get();
+        dispatcher = new FusedTreeWalker(analyses.all());
+        dispatcher.enterSegment(new ParseSegment(null, tokens, null));
+        open.clear();
+        entered = 0;
+        unitDepth = 0;
+        failure = null;
+    }
+
+    /**
+     * Gets the analyses after the parse has finished.
+     * @return The analyses, complete if the parse had no syntax errors
+     * @throws RuntimeException The first exception thrown by an analysis
+     */
+    public ProgramAnalyses getAnalyses() {
+        if (failure != null) throw failure;
+        return analyses;
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+        if (ctx.parent != null) {
+            ((ParserRuleContext) ctx.parent).addChild(ctx); // the link a tree-building parse would make
+        }
+        if (unitDepth > 0) {
+            unitDepth++;
+        } else if (OUTLINE_RULES.contains(ctx.getRuleIndex())) {
+            open.add(ctx);
+        } else {
+            unitDepth = 1;
+        }
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+        if (unitDepth > 1) {
+            unitDepth--;
+            return;
+        }
+        boolean unit = unitDepth == 1;
+        unitDepth = 0;
+        if (failure == null) {
+            // An analysis that throws here would be unwound through the parser; report it afterwards instead
+            try {
+                while (entered < open.size()) {
+                    dispatcher.enter(open.get(entered++));
+                }
+                if (unit) {
+                    dispatcher.walk(ctx);
+                } else {
+                    dispatcher.exit(ctx);
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        if (!unit) {
+            open.remove(open.size() - 1);
+            entered = Math.min(entered, open.size());
+        }
+        detach(ctx);
+    }
+
+    private static void detach(ParserRuleContext ctx) {
+        if (ctx.parent == null) return;
+        List<ParseTree> siblings = ((ParserRuleContext) ctx.parent).children;
+        if (siblings != null && !siblings.isEmpty() && siblings.get(siblings.size() - 1) == ctx) {
+            siblings.remove(siblings.size() - 1);
+        }
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+        // The parser attaches tokens to the current rule itself
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+        // Files with syntax errors are rejected after the parse
+    }
+}
@@ -1,29 +1,26 @@
 package cobol;
 
-import cobol.antlr.Cobol85BaseVisitor;
 import cobol.antlr.Cobol85Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 
 import java.util.*;
 
 /**
- * Transforms COBOL statements into a structured JSON tree for control flow analysis.
+ * Transforms COBOL statements into a tree of structured statements for control flow analysis.
  * Supports PERFORM THRU/VARYING, CALL tracing, COPYBOOK integration, GO TO graph handling,
  * and File I/O with FD section modeling.
  */
-public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
+public class StructuredStatementTransformer extends AnalysisVisitor {
 
-    private final JSONArray structuredStatements = new JSONArray();
-    private final Deque<JSONObject> statementStack = new ArrayDeque<>();
+    private final List<Statement> structuredStatements = new ArrayList<>();
+    private final Deque<Statement> statementStack = new ArrayDeque<>();
     private String currentParagraph = "_MAIN";
     private boolean visitingThen = false;
     private boolean visitingElse = false;
     private boolean inWhenClause = false;
     private final List<ParsingError> errors = new ArrayList<>();
-    private final Set<String> copybooksIncluded = new HashSet<>();
-    private final Map<String, JSONObject> fileDescriptions = new HashMap<>();
+    private final Map<String, FileDescription> fileDescriptions = new HashMap<>();
 
     public static class ContextMetadata {
         public final String paragraph;
@@ -35,118 +32,8 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
         }
     }
 
-    public static class StructuredStatement {
-        public final String type;
-        public final int line;
-        public final String content;
-        public final String pseudocode;
-        public final JSONArray thenBlock;
-        public final JSONArray elseBlock;
-        public final JSONArray cases;
-        public final JSONObject metadata;
-
-        public StructuredStatement(String type, int line, String content) {
-            this(type, line, content, type.equals("IF") || type.equals("PERFORM") ? new JSONArray() : null,
-                    type.equals("IF") ? new JSONArray() : null,
-                    type.equals("EVALUATE") ? new JSONArray() : null,
-                    new JSONObject());
-        }
-
-        public StructuredStatement(String type, int line, String content, JSONArray thenBlock, JSONArray elseBlock, JSONArray cases, JSONObject metadata) {
-            this.type = type;
-            this.line = line;
-            this.content = content;
-            this.pseudocode = generatePseudocode(type, content, metadata);
-            this.thenBlock = thenBlock;
-            this.elseBlock = elseBlock;
-            this.cases = cases;
-            this.metadata = metadata;
-        }
-
-        public JSONObject toJson() {
-            JSONObject obj = new JSONObject();
-            obj.put("type", type);
-            obj.put("line", line);
-            obj.put("content", content);
-            obj.put("pseudocode", pseudocode);
-            if (thenBlock != null) {
-                obj.put("then", thenBlock);
-            }
-            if (elseBlock != null) {
-                obj.put("else", elseBlock);
-            }
-            if (cases != null) {
-                obj.put("cases", cases);
-            }
-            if (!metadata.isEmpty()) {
-                obj.put("metadata", metadata);
-            }
-            return obj;
-        }
-
-        private static String generatePseudocode(String type, String content, JSONObject metadata) {
-            switch (type) {
-                case "MOVE":
-                    String[] moveParts = content.split("\\s+TO\\s+", 2);
-                    if (moveParts.length == 2) {
-                        return moveParts[1] + " = " + moveParts[0].replace("MOVE ", "") + ";";
-                    }
-                    break;
-                case "IF":
-                    return "if (" + content.replace("IF ", "") + ") {";
-                case "ELSE":
-                    return "} else {";
-                case "END-IF":
-                    return "}";
-                case "PERFORM":
-                    String target = (String) metadata.getOrDefault("target", "");
-                    String thru = (String) metadata.getOrDefault("thru", "");
-                    String varying = (String) metadata.getOrDefault("varying", "");
-                    if (!varying.isEmpty()) {
-                        return "for (" + varying + ") {";
-                    } else if (!thru.isEmpty()) {
-                        return "call " + target + " thru " + thru + ";";
-                    } else {
-                        return "call " + content.replace("PERFORM ", "") + ";";
-                    }
-                case "CALL":
-                    String program = (String) metadata.getOrDefault("program", "");
-                    JSONArray params = (JSONArray) metadata.getOrDefault("parameters", new JSONArray());
-                    return "call_program(" + program + "(" + params.toJSONString() + "));";
-                case "ADD":
-                    return content.replace("ADD ", "") + ";";
-                case "SUBTRACT":
-                    return content.replace("SUBTRACT ", "") + ";";
-                case "READ":
-                    return "read_file(" + content.replace("READ ", "") + ");";
-                case "WRITE":
-                    return "write_file(" + content.replace("WRITE ", "") + ");";
-                case "OPEN":
-                    return "open_file(" + content.replace("OPEN ", "") + ");";
-                case "CLOSE":
-                    return "close_file(" + content.replace("CLOSE ", "") + ");";
-                case "INSPECT":
-                    return "inspect(" + content.replace("INSPECT ", "") + ");";
-                case "EVALUATE":
-                    return "switch (" + content.replace("EVALUATE ", "") + ") {";
-                case "WHEN":
-                    return "case " + content.replace("WHEN ", "") + ":";
-                case "END-EVALUATE":
-                    return "}";
-                case "END-PERFORM":
-                    return "}";
-                case "GO TO":
-                    String gotoTarget = (String) metadata.getOrDefault("target", "");
-                    return "goto " + gotoTarget + ";";
-                default:
-                    return content + ";";
-            }
-            return content + ";";
-        }
-    }
-
     public static class TransformationResult {
-        public final List<JSONObject> statements = new ArrayList<>();
+        public final List<Statement> statements = new ArrayList<>();
         public final Map<String, Set<String>> callGraph = new HashMap<>();
         public final Set<String> callList = new LinkedHashSet<>();
         public final Set<String> performList = new LinkedHashSet<>();
@@ -167,45 +54,38 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
         return errors;
     }
 
-    public Set<String> getCopybooksIncluded() {
-        return copybooksIncluded;
-    }
-
-    public Map<String, JSONObject> getFileDescriptions() {
+    public Map<String, FileDescription> getFileDescriptions() {
         return fileDescriptions;
     }
 
-    public TransformationResult transformParagraph(JSONArray lines, ContextMetadata context) {
+    public TransformationResult transformParagraph(Paragraph lines, ContextMetadata context) {
         TransformationResult result = new TransformationResult();
-        Deque<StructuredStatement> controlStack = new ArrayDeque<>();
-        StructuredStatement currentControlStmt = null;
+        Deque<Statement> controlStack = new ArrayDeque<>();
+        Statement currentControlStmt = null;
         System.out.println("Starting transformation for paragraph " + context.paragraph);
 
-        for (Object obj : lines) {
-            if (!(obj instanceof JSONObject)) continue;
-            JSONObject lineObj = (JSONObject) obj;
-
-            String text = ((String) lineObj.get("text")).trim().toUpperCase();
-            int line = ((Number) lineObj.get("line")).intValue();
+        for (int i = 0; i < lines.size(); i++) {
+            String text = lines.getText(i).trim().toUpperCase();
+            int line = lines.getLine(i);
 
             if (text.isEmpty()) continue;
 
             String keyword = getLeadingKeyword(text);
             if (keyword == null) {
-                StructuredStatement stmt = new StructuredStatement("OTHER", line, text);
+                Statement stmt = new Statement("OTHER", line, text);
                 addToCurrentBlock(stmt, controlStack, result, inWhenClause, currentControlStmt);
                 continue;
             }
 
-            StructuredStatement stmt;
+            Statement stmt;
             if (keyword.equals("END-IF") || keyword.equals("END-EVALUATE") || keyword.equals("END-PERFORM")) {
                 if (!controlStack.isEmpty()) {
                     currentControlStmt = controlStack.peek();
                     if ((keyword.equals("END-IF") && currentControlStmt.type.equals("IF")) ||
                             (keyword.equals("END-EVALUATE") && currentControlStmt.type.equals("EVALUATE")) ||
                             (keyword.equals("END-PERFORM") && currentControlStmt.type.equals("PERFORM"))) {
-                        StructuredStatement controlStmt = controlStack.pop();
-                        result.statements.add(controlStmt.toJson());
+                        Statement controlStmt = controlStack.pop();
+                        result.statements.add(controlStmt);
                         System.out.println("Popped " + controlStmt.type + " at line " + line + " for " + keyword + ": " + controlStmt.content);
                     } else {
                         errors.add(new ParsingError(context.programId, "Mismatched " + keyword + " for " + currentControlStmt.type + " in paragraph " + context.paragraph + ": " + text, line));
@@ -223,11 +103,11 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
             if (keyword.equals("IF") || text.startsWith("ELSE IF")) {
                 result.cyclomaticComplexity++;
                 String stmtText = text.startsWith("ELSE IF") ? text.replace("ELSE IF", "IF") : text;
-                stmt = new StructuredStatement("IF", line, stmtText);
+                stmt = new Statement("IF", line, stmtText);
                 System.out.println("Pushing IF at line " + line + ": " + text);
                 if (text.startsWith("ELSE IF")) {
                     if (currentControlStmt != null && currentControlStmt.type.equals("IF")) {
-                        currentControlStmt.elseBlock.add(stmt.toJson());
+                        currentControlStmt.elseBlock.add(stmt);
                     } else {
                         errors.add(new ParsingError(context.programId, "Unmatched ELSE IF in paragraph " + context.paragraph + ": " + text, line));
                         continue;
@@ -242,8 +122,8 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
                 inWhenClause = false;
             } else if (keyword.equals("ELSE") && !text.startsWith("ELSE IF")) {
                 if (currentControlStmt != null && currentControlStmt.type.equals("IF")) {
-                    stmt = new StructuredStatement(keyword, line, text);
-                    currentControlStmt.elseBlock.add(stmt.toJson());
+                    stmt = new Statement(keyword, line, text);
+                    currentControlStmt.elseBlock.add(stmt);
                     visitingThen = false;
                     visitingElse = true;
                     inWhenClause = false;
@@ -253,10 +133,10 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
                 continue;
             } else if (keyword.equals("EVALUATE")) {
                 result.cyclomaticComplexity++;
-                stmt = new StructuredStatement(keyword, line, text);
+                stmt = new Statement(keyword, line, text);
                 System.out.println("Pushing EVALUATE at line " + line + ": " + text);
                 if (currentControlStmt != null && currentControlStmt.type.equals("PERFORM")) {
-                    currentControlStmt.thenBlock.add(stmt.toJson());
+                    currentControlStmt.thenBlock.add(stmt);
                 } else {
                     addToCurrentBlock(stmt, controlStack, result, inWhenClause, currentControlStmt);
                 }
@@ -267,30 +147,29 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
                 visitingElse = false;
             } else if (keyword.equals("WHEN") && currentControlStmt != null && currentControlStmt.type.equals("EVALUATE")) {
                 result.cyclomaticComplexity++;
-                stmt = new StructuredStatement(keyword, line, text);
-                currentControlStmt.cases.add(stmt.toJson());
+                stmt = new Statement(keyword, line, text);
+                currentControlStmt.cases.add(stmt);
                 inWhenClause = true;
             } else if (keyword.equals("PERFORM")) {
                 result.cyclomaticComplexity++;
-                JSONObject metadata = new JSONObject();
+                stmt = new Statement(keyword, line, text);
                 String[] parts = text.split("\\s+", 6);
                 if (parts.length >= 2) {
                     if (parts.length >= 5 && parts[1].equals("VARYING")) {
-                        metadata.put("varying", parts[2] + " FROM " + parts[3] + " BY " + parts[4] + (parts.length > 5 ? " UNTIL " + parts[5] : ""));
+                        stmt.varying = parts[2] + " FROM " + parts[3] + " BY " + parts[4] + (parts.length > 5 ? " UNTIL " + parts[5] : "");
                     } else if (parts.length >= 3 && parts[2].equals("THRU")) {
-                        metadata.put("target", parts[1]);
-                        metadata.put("thru", parts[3]);
+                        stmt.target = parts[1];
+                        stmt.thru = parts[3];
                         result.performList.add(parts[1]);
                         result.performList.add(parts[3]);
                         result.callGraph.computeIfAbsent(context.paragraph, k -> new LinkedHashSet<>()).add(parts[1]);
                         result.callGraph.computeIfAbsent(context.paragraph, k -> new LinkedHashSet<>()).add(parts[3]);
                     } else {
-                        metadata.put("target", parts[1]);
+                        stmt.target = parts[1];
                         result.performList.add(parts[1]);
                         result.callGraph.computeIfAbsent(context.paragraph, k -> new LinkedHashSet<>()).add(parts[1]);
                     }
                 }
-                stmt = new StructuredStatement(keyword, line, text, new JSONArray(), null, null, metadata);
                 System.out.println("Pushing PERFORM at line " + line + ": " + text);
                 addToCurrentBlock(stmt, controlStack, result, inWhenClause, currentControlStmt);
                 controlStack.push(stmt);
@@ -299,50 +178,45 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
                 visitingElse = false;
                 inWhenClause = false;
             } else if (keyword.equals("CALL")) {
-                JSONObject metadata = new JSONObject();
+                stmt = new Statement(keyword, line, text);
                 String[] parts = text.split("\\s+", 5);
                 if (parts.length >= 2) {
                     String program = parts[1].replaceAll("[\"']", "").replace(".", "").toUpperCase();
-                    metadata.put("program", program);
+                    stmt.program = program;
                     if (parts.length >= 3 && parts[2].equals("USING")) {
-                        JSONArray params = new JSONArray();
-                        for (int i = 3; i < parts.length; i++) {
-                            params.add(parts[i].replaceAll("[\"']", ""));
+                        List<String> params = new ArrayList<>();
+                        for (int p = 3; p < parts.length; p++) {
+                            params.add(parts[p].replaceAll("[\"']", ""));
                         }
-                        metadata.put("parameters", params);
+                        stmt.parameters = params;
                     }
                     result.callList.add(program);
                     result.callGraph.computeIfAbsent(context.paragraph, k -> new LinkedHashSet<>()).add(program);
                 } else {
                     errors.add(new ParsingError(context.programId, "Invalid CALL statement in paragraph " + context.paragraph + ": " + text, line));
                 }
-                stmt = new StructuredStatement(keyword, line, text, null, null, null, metadata);
                 addToCurrentBlock(stmt, controlStack, result, inWhenClause, currentControlStmt);
             } else if (keyword.equals("GO TO")) {
-                JSONObject metadata = new JSONObject();
+                stmt = new Statement(keyword, line, text);
                 String[] parts = text.split("\\s+", 3);
                 if (parts.length >= 2) {
                     String target = parts[1].replace(".", "").toUpperCase();
-                    metadata.put("target", target);
+                    stmt.target = target;
                     result.gotoList.add(target);
                     result.callGraph.computeIfAbsent(context.paragraph, k -> new LinkedHashSet<>()).add(target);
                 }
-                stmt = new StructuredStatement(keyword, line, text, null, null, null, metadata);
                 addToCurrentBlock(stmt, controlStack, result, inWhenClause, currentControlStmt);
             } else if (keyword.equals("OPEN") || keyword.equals("READ") || keyword.equals("WRITE") || keyword.equals("CLOSE")) {
-                JSONObject metadata = new JSONObject();
+                stmt = new Statement(keyword, line, text);
                 String[] parts = text.split("\\s+", 3);
                 if (parts.length >= 2) {
                     String fileName = parts[1].replace(".", "").toUpperCase();
-                    metadata.put("file", fileName);
-                    if (fileDescriptions.containsKey(fileName)) {
-                        metadata.put("fd", fileDescriptions.get(fileName));
-                    }
+                    stmt.file = fileName;
+                    stmt.fd = fileDescriptions.get(fileName);
                 }
-                stmt = new StructuredStatement(keyword, line, text, null, null, null, metadata);
                 addToCurrentBlock(stmt, controlStack, result, inWhenClause, currentControlStmt);
             } else {
-                stmt = new StructuredStatement(keyword, line, text);
+                stmt = new Statement(keyword, line, text);
                 addToCurrentBlock(stmt, controlStack, result, inWhenClause, currentControlStmt);
             }
         }
@@ -350,9 +224,9 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
         if (!controlStack.isEmpty()) {
             System.out.println("Unclosed structures in paragraph " + context.paragraph + ": " + controlStack.size());
             while (!controlStack.isEmpty()) {
-                StructuredStatement controlStmt = controlStack.pop();
+                Statement controlStmt = controlStack.pop();
                 errors.add(new ParsingError(context.programId, "Unclosed " + controlStmt.type + " in paragraph " + context.paragraph + ": " + controlStmt.content, controlStmt.line));
-                result.statements.add(controlStmt.toJson());
+                result.statements.add(controlStmt);
             }
         } else {
             System.out.println("All control structures closed in paragraph " + context.paragraph);
@@ -361,16 +235,16 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
         return result;
     }
 
-    private void addToCurrentBlock(StructuredStatement stmt, Deque<StructuredStatement> controlStack, TransformationResult result, boolean inWhenClause, StructuredStatement currentControlStmt) {
+    private void addToCurrentBlock(Statement stmt, Deque<Statement> controlStack, TransformationResult result, boolean inWhenClause, Statement currentControlStmt) {
         if (currentControlStmt != null) {
-            JSONArray targetBlock = inWhenClause ? currentControlStmt.cases :
+            List<Statement> targetBlock = inWhenClause ? currentControlStmt.cases :
                     (visitingThen || currentControlStmt.thenBlock.isEmpty()) ? currentControlStmt.thenBlock : currentControlStmt.elseBlock;
             if (targetBlock != null) {
-                targetBlock.add(stmt.toJson());
+                targetBlock.add(stmt);
                 return;
             }
         }
-        result.statements.add(stmt.toJson());
+        result.statements.add(stmt);
     }
 
     private String getLeadingKeyword(String text) {
@@ -382,39 +256,28 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
         return null;
     }
 
-    public void processCopybooks(CobolPreprocessor preprocessor) {
-        copybooksIncluded.addAll(preprocessor.getVisitedCopybooks());
-    }
-
     @Override
     public Void visitFileDescriptionEntry(Cobol85Parser.FileDescriptionEntryContext ctx) {
         String fileName = ctx.fileName() != null ? ctx.fileName().getText().toUpperCase() : "UNKNOWN";
-        JSONObject fdData = new JSONObject();
-        fdData.put("name", fileName);
 
         // Handle LABEL RECORD clause (generic approach)
-        boolean foundLabel = false;
+        String label = "OMITTED";
         for (ParseTree child : ctx.children) {
             if (child.getText().toUpperCase().startsWith("LABEL RECORD")) {
                 String labelText = child.getText().toUpperCase();
-                fdData.put("label", labelText);
+                label = labelText;
                 if (!labelText.contains("STANDARD") && !labelText.contains("OMITTED")) {
                     errors.add(new ParsingError("UNKNOWN", "Invalid LABEL RECORD clause for file " + fileName + ": " + labelText, ctx.getStart().getLine()));
                 }
-                foundLabel = true;
                 break;
             }
         }
-        if (!foundLabel) {
-            fdData.put("label", "OMITTED");
-        }
+        FileDescription fd = new FileDescription(fileName, label);
 
         // Handle RECORD DESCRIPTION (generic approach)
-        JSONArray records = new JSONArray();
         for (ParseTree child : ctx.children) {
             if (child instanceof Cobol85Parser.DataDescriptionEntryContext) {
                 Cobol85Parser.DataDescriptionEntryContext dataCtx = (Cobol85Parser.DataDescriptionEntryContext) child;
-                JSONObject recordData = new JSONObject();
                 String recordName = "UNKNOWN";
                 String level = "UNKNOWN";
                 String picture = null;
@@ -431,20 +294,12 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
                     }
                 }
 
-                recordData.put("name", recordName);
-                recordData.put("level", level);
-                if (picture != null) {
-                    recordData.put("picture", picture);
-                }
-                records.add(recordData);
+                fd.addRecord(new DataItem(recordName, level, picture, null));
             }
         }
-        if (!records.isEmpty()) {
-            fdData.put("records", records);
-        }
 
-        fileDescriptions.put(fileName, fdData);
-        System.out.println("Processed FD for file " + fileName + ": " + fdData.toJSONString());
+        fileDescriptions.put(fileName, fd);
+        System.out.println("Processed FD for file " + fileName + ": " + fd.toJSONString());
         return super.visitFileDescriptionEntry(ctx);
     }
 
@@ -464,161 +319,130 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
 
     @Override
     public Void visitIfStatement(Cobol85Parser.IfStatementContext ctx) {
-        JSONObject ifNode = new JSONObject();
-        ifNode.put("type", "IF");
-        ifNode.put("line", ctx.getStart().getLine());
-        ifNode.put("condition", ctx.condition() != null ? ctx.condition().getText() : "UNKNOWN");
-        ifNode.put("then", new JSONArray());
-        ifNode.put("else", new JSONArray());
-
+        Statement ifNode = new Statement("IF", ctx.getStart().getLine(), ctx.condition() != null ? ctx.condition().getText() : "UNKNOWN");
         insertStructuredStatement(ifNode);
         statementStack.push(ifNode);
+        return null;
+    }
 
+    @Override
+    public Void visitIfThen(Cobol85Parser.IfThenContext ctx) {
         visitingThen = true;
-        if (ctx.ifThen() != null) visitChildren(ctx.ifThen());
-        visitingThen = false;
+        return null;
+    }
 
+    @Override
+    public Void visitIfElse(Cobol85Parser.IfElseContext ctx) {
         visitingElse = true;
-        if (ctx.ifElse() != null) visitChildren(ctx.ifElse());
-        visitingElse = false;
-
-        statementStack.pop();
         return null;
     }
 
+    /**
+     * Closes the THEN/ELSE blocks and the IF node opened by the visit methods above.
+     * @param ctx The node being left
+     */
+    @Override
+    public void exitNode(ParserRuleContext ctx) {
+        if (ctx instanceof Cobol85Parser.IfThenContext) {
+            visitingThen = false;
+        } else if (ctx instanceof Cobol85Parser.IfElseContext) {
+            visitingElse = false;
+        } else if (ctx instanceof Cobol85Parser.IfStatementContext) {
+            statementStack.pop();
+        }
+    }
+
     @Override
     public Void visitComputeStatement(Cobol85Parser.ComputeStatementContext ctx) {
-        JSONObject node = new JSONObject();
-        node.put("type", "COMPUTE");
-        node.put("line", ctx.getStart().getLine());
-        node.put("text", ctx.getText());
-        insertStructuredStatement(node);
+        insertStructuredStatement(new Statement("COMPUTE", ctx.getStart().getLine(), ctx.getText()));
         return super.visitComputeStatement(ctx);
     }
 
     @Override
     public Void visitOpenStatement(Cobol85Parser.OpenStatementContext ctx) {
-        JSONObject node = new JSONObject();
-        node.put("type", "OPEN");
-        node.put("line", ctx.getStart().getLine());
-        node.put("text", ctx.getText());
-        JSONObject metadata = new JSONObject();
-        String[] parts = ctx.getText().toUpperCase().split("\\s+", 3);
-        if (parts.length >= 2) {
-            String fileName = parts[1].replace(".", "");
-            metadata.put("file", fileName);
-            if (fileDescriptions.containsKey(fileName)) {
-                metadata.put("fd", fileDescriptions.get(fileName));
-            }
-        }
-        node.put("metadata", metadata);
-        insertStructuredStatement(node);
+        insertStructuredStatement(fileStatement("OPEN", ctx));
         return super.visitOpenStatement(ctx);
     }
 
     @Override
     public Void visitCloseStatement(Cobol85Parser.CloseStatementContext ctx) {
-        JSONObject node = new JSONObject();
-        node.put("type", "CLOSE");
-        node.put("line", ctx.getStart().getLine());
-        node.put("text", ctx.getText());
-        JSONObject metadata = new JSONObject();
+        insertStructuredStatement(fileStatement("CLOSE", ctx));
+        return super.visitCloseStatement(ctx);
+    }
+
+    /**
+     * Creates an OPEN or CLOSE node, linked to the description of the file it names.
+     */
+    private Statement fileStatement(String type, ParserRuleContext ctx) {
+        Statement node = new Statement(type, ctx.getStart().getLine(), ctx.getText());
         String[] parts = ctx.getText().toUpperCase().split("\\s+", 3);
         if (parts.length >= 2) {
             String fileName = parts[1].replace(".", "");
-            metadata.put("file", fileName);
-            if (fileDescriptions.containsKey(fileName)) {
-                metadata.put("fd", fileDescriptions.get(fileName));
-            }
+            node.file = fileName;
+            node.fd = fileDescriptions.get(fileName);
         }
-        node.put("metadata", metadata);
-        insertStructuredStatement(node);
-        return super.visitCloseStatement(ctx);
+        return node;
     }
 
     @Override
     public Void visitReadStatement(Cobol85Parser.ReadStatementContext ctx) {
-        JSONObject node = new JSONObject();
-        node.put("type", "READ");
-        node.put("line", ctx.getStart().getLine());
-        node.put("text", ctx.getText());
-        JSONObject metadata = new JSONObject();
+        Statement node = new Statement("READ", ctx.getStart().getLine(), ctx.getText());
         if (ctx.fileName() != null) {
             String fileName = ctx.fileName().getText().toUpperCase();
-            metadata.put("file", fileName);
-            if (fileDescriptions.containsKey(fileName)) {
-                metadata.put("fd", fileDescriptions.get(fileName));
-            }
+            node.file = fileName;
+            node.fd = fileDescriptions.get(fileName);
         }
-        node.put("metadata", metadata);
         insertStructuredStatement(node);
         return super.visitReadStatement(ctx);
     }
 
     @Override
     public Void visitWriteStatement(Cobol85Parser.WriteStatementContext ctx) {
-        JSONObject node = new JSONObject();
-        node.put("type", "WRITE");
-        node.put("line", ctx.getStart().getLine());
-        node.put("text", ctx.getText());
-        JSONObject metadata = new JSONObject();
+        Statement node = new Statement("WRITE", ctx.getStart().getLine(), ctx.getText());
         if (ctx.recordName() != null) {
             String recordName = ctx.recordName().getText().toUpperCase();
-            metadata.put("record", recordName);
-            for (JSONObject fd : fileDescriptions.values()) {
-                JSONArray records = (JSONArray) fd.get("records");
-                if (records != null && records.stream().anyMatch(r -> ((JSONObject) r).get("name").equals(recordName))) {
-                    metadata.put("fd", fd);
+            node.record = recordName;
+            for (FileDescription fd : fileDescriptions.values()) {
+                if (fd.hasRecord(recordName)) {
+                    node.fd = fd;
                     break;
                 }
             }
         }
-        node.put("metadata", metadata);
         insertStructuredStatement(node);
         return super.visitWriteStatement(ctx);
     }
 
     @Override
     public Void visitInspectStatement(Cobol85Parser.InspectStatementContext ctx) {
-        JSONObject node = new JSONObject();
-        node.put("type", "INSPECT");
-        node.put("line", ctx.getStart().getLine());
-        node.put("text", ctx.getText());
-        insertStructuredStatement(node);
+        insertStructuredStatement(new Statement("INSPECT", ctx.getStart().getLine(), ctx.getText()));
         return super.visitInspectStatement(ctx);
     }
 
     @Override
     public Void visitPerformStatement(Cobol85Parser.PerformStatementContext ctx) {
-        JSONObject performNode = new JSONObject();
-        performNode.put("type", "PERFORM");
-        performNode.put("line", ctx.getStart().getLine());
-        JSONObject metadata = new JSONObject();
+        Statement performNode = new Statement("PERFORM", ctx.getStart().getLine(), ctx.getText());
 
         String text = ctx.getText().toUpperCase();
         String[] parts = text.split("\\s+", 6);
         if (parts.length >= 2) {
             if (parts[1].equals("VARYING")) {
-                metadata.put("varying", parts[2] + " FROM " + parts[3] + " BY " + parts[4] + (parts.length > 5 ? " UNTIL " + parts[5] : ""));
+                performNode.varying = parts[2] + " FROM " + parts[3] + " BY " + parts[4] + (parts.length > 5 ? " UNTIL " + parts[5] : "");
             } else if (parts.length >= 3 && parts[2].equals("THRU")) {
-                metadata.put("target", parts[1]);
-                metadata.put("thru", parts[3]);
+                performNode.target = parts[1];
+                performNode.thru = parts[3];
             } else {
-                metadata.put("target", parts[1]);
+                performNode.target = parts[1];
             }
         }
 
-        performNode.put("metadata", metadata);
         insertStructuredStatement(performNode);
         return super.visitPerformStatement(ctx);
     }
 
     @Override
     public Void visitCallStatement(Cobol85Parser.CallStatementContext ctx) {
-        JSONObject callNode = new JSONObject();
-        callNode.put("type", "CALL");
-        callNode.put("line", ctx.getStart().getLine());
-        JSONObject metadata = new JSONObject();
+        Statement callNode = new Statement("CALL", ctx.getStart().getLine(), ctx.getText());
 
         String programName = "UNKNOWN";
         if (ctx.literal() != null) {
@@ -626,83 +450,60 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
         } else if (ctx.identifier() != null) {
             programName = ctx.identifier().getText().toUpperCase();
         }
-        metadata.put("program", programName);
+        callNode.program = programName;
 
-        JSONArray using = new JSONArray();
+        List<String> using = new ArrayList<>();
         if (ctx.callUsingPhrase() != null) {
             for (ParseTree child : ctx.callUsingPhrase().children) {
                 using.add(child.getText());
             }
         }
         if (!using.isEmpty()) {
-            metadata.put("parameters", using);
+            callNode.parameters = using;
         }
 
-        callNode.put("metadata", metadata);
         insertStructuredStatement(callNode);
         return super.visitCallStatement(ctx);
     }
 
     @Override
     public Void visitDisplayStatement(Cobol85Parser.DisplayStatementContext ctx) {
-        JSONObject displayNode = new JSONObject();
-        displayNode.put("type", "DISPLAY");
-        displayNode.put("line", ctx.getStart().getLine());
-
         StringBuilder message = new StringBuilder();
         for (ParseTree child : ctx.children) {
             message.append(child.getText()).append(" ");
         }
 
-        displayNode.put("message", message.toString().trim());
-        insertStructuredStatement(displayNode);
+        insertStructuredStatement(new Statement("DISPLAY", ctx.getStart().getLine(), message.toString().trim()));
         return super.visitDisplayStatement(ctx);
     }
 
     @Override
     public Void visitExitStatement(Cobol85Parser.ExitStatementContext ctx) {
-        JSONObject exitNode = new JSONObject();
-        exitNode.put("type", "EXIT");
-        exitNode.put("line", ctx.getStart().getLine());
-        insertStructuredStatement(exitNode);
+        insertStructuredStatement(new Statement("EXIT", ctx.getStart().getLine(), ctx.getText()));
         return super.visitExitStatement(ctx);
     }
 
     @Override
     public Void visitStopStatement(Cobol85Parser.StopStatementContext ctx) {
-        JSONObject stopNode = new JSONObject();
-        stopNode.put("type", "STOP RUN");
-        stopNode.put("line", ctx.getStart().getLine());
-        insertStructuredStatement(stopNode);
+        insertStructuredStatement(new Statement("STOP RUN", ctx.getStart().getLine(), ctx.getText()));
         return super.visitStopStatement(ctx);
     }
 
     @Override
     public Void visitGoToStatement(Cobol85Parser.GoToStatementContext ctx) {
-        JSONObject gotoNode = new JSONObject();
-        gotoNode.put("type", "GO TO");
-        gotoNode.put("line", ctx.getStart().getLine());
-        JSONObject metadata = new JSONObject();
+        Statement gotoNode = new Statement("GO TO", ctx.getStart().getLine(), ctx.getText());
 
         if (ctx.goToStatementSimple() != null && ctx.goToStatementSimple().procedureName() != null) {
-            String target = ctx.goToStatementSimple().procedureName().getText().toUpperCase();
-            metadata.put("target", target);
+            gotoNode.target = ctx.goToStatementSimple().procedureName().getText().toUpperCase();
         }
 
-        gotoNode.put("metadata", metadata);
         insertStructuredStatement(gotoNode);
         return super.visitGoToStatement(ctx);
     }
 
     @Override
     public Void visitEvaluateStatement(Cobol85Parser.EvaluateStatementContext ctx) {
-        JSONObject evalNode = new JSONObject();
-        evalNode.put("type", "EVALUATE");
-        evalNode.put("line", ctx.getStart().getLine());
-        evalNode.put("expression", ctx.getText());
-        evalNode.put("cases", new JSONArray());
-
-        insertStructuredStatement(evalNode);
+        insertStructuredStatement(new Statement("EVALUATE", ctx.getStart().getLine(), ctx.getText()));
         return super.visitEvaluateStatement(ctx);
     }
 
@@ -711,12 +512,11 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
         return null;
     }
 
-    private void insertStructuredStatement(JSONObject stmt) {
+    private void insertStructuredStatement(Statement stmt) {
         if (!statementStack.isEmpty()) {
-            JSONObject parent = statementStack.peek();
-            JSONArray block = visitingThen ? (JSONArray) parent.get("then") :
-                    visitingElse ? (JSONArray) parent.get("else") :
-                            parent.get("cases") != null ? (JSONArray) parent.get("cases") : null;
+            Statement parent = statementStack.peek();
+            List<Statement> block = visitingThen ? parent.thenBlock :
+                    visitingElse ? parent.elseBlock : parent.cases;
             if (block != null) {
                 block.add(stmt);
                 return;
@@ -725,7 +525,7 @@ public class StructuredStatementTransformer extends Cobol85BaseVisitor<Void> {
         structuredStatements.add(stmt);
     }
 
-    public JSONArray getStructuredStatements() {
+    public List<Statement> getStructuredStatements() {
         return structuredStatements;
     }
-}
\ No newline at end of file
+}
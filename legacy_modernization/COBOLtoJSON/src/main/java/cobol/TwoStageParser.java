@@ -0,0 +1,99 @@
+package cobol;
+
+import cobol.antlr.Cobol85Parser;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.function.Function;
+
+/**
+ * Parses COBOL source with ANTLR's two-stage prediction strategy.
+ * The first attempt uses SLL prediction with a bail-out error strategy; only if that
+ * fails is the input rewound and parsed again with full LL prediction and normal error reporting.
+ */
+public class TwoStageParser {
+
+    /**
+     * The prediction stage that produced the parse tree.
+     */
+    public enum Stage {
+        SLL, LL
+    }
+
+    /**
+     * The parse tree together with the stage that produced it.
+     */
+    public static class Result {
+        public final ParseTree tree;
+        public final Stage stage;
+
+        public Result(ParseTree tree, Stage stage) {
+            this.tree = tree;
+            this.stage = stage;
+        }
+    }
+
+    /**
+     * Parses the token stream starting at {@code startRule}.
+     * @param parser Parser attached to {@code tokens}
+     * @param tokens Token stream feeding the parser
+     * @param listener Error listener used by the LL stage
+     * @param twoStage Whether to attempt the SLL stage first; if false, only the LL stage runs
+     * @return The parse tree and the stage that succeeded
+     */
+    public static Result parse(Cobol85Parser parser, TokenStream tokens, ANTLRErrorListener listener, boolean twoStage) {
+        return parse(parser, tokens, listener, twoStage, Cobol85Parser::startRule);
+    }
+
+    /**
+     * Parses the token stream starting at the given entry rule.
+     * @param parser Parser attached to {@code tokens}
+     * @param tokens Token stream feeding the parser
+     * @param listener Error listener used by the LL stage
+     * @param twoStage Whether to attempt the SLL stage first; if false, only the LL stage runs
+     * @param entryRule The grammar rule to invoke, e.g. {@code Cobol85Parser::procedureDivisionBody}
+     * @return The parse tree and the stage that succeeded
+     */
+    public static Result parse(Cobol85Parser parser, TokenStream tokens, ANTLRErrorListener listener, boolean twoStage,
+                               Function<Cobol85Parser, ? extends ParseTree> entryRule) {
+        return parse(parser, tokens, listener, twoStage, entryRule, null);
+    }
+
+    /**
+     * Parses the token stream starting at the given entry rule.
+     * @param parser Parser attached to {@code tokens}
+     * @param tokens Token stream feeding the parser
+     * @param listener Error listener used by the LL stage
+     * @param twoStage Whether to attempt the SLL stage first; if false, only the LL stage runs
+     * @param entryRule The grammar rule to invoke, e.g. {@code Cobol85Parser::procedureDivisionBody}
+     * @param beforeRetry Run after a failed SLL stage, before the input is parsed again; may be null
+     * @return The parse tree and the stage that succeeded
+     */
+    public static Result parse(Cobol85Parser parser, TokenStream tokens, ANTLRErrorListener listener, boolean twoStage,
+                               Function<Cobol85Parser, ? extends ParseTree> entryRule, Runnable beforeRetry) {
+        if (twoStage) {
+            parser.removeErrorListeners();
+            parser.setErrorHandler(new BailErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            try {
+                return new Result(entryRule.apply(parser), Stage.SLL);
+            } catch (ParseCancellationException e) {
+                // SLL could not handle the input; rewind and retry with full LL below
+                tokens.seek(0);
+                parser.reset();
+                if (beforeRetry != null) beforeRetry.run();
+            }
+        }
+
+        parser.removeErrorListeners();
+        parser.addErrorListener(listener);
+        parser.setErrorHandler(new DefaultErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        return new Result(entryRule.apply(parser), Stage.LL);
+    }
+}
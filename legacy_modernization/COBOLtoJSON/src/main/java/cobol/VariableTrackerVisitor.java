@@ -1,6 +1,5 @@
 package cobol;
 
-import cobol.antlr.Cobol85BaseVisitor;
 import cobol.antlr.Cobol85Parser;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.json.simple.JSONArray;
@@ -12,31 +11,12 @@ import java.util.*;
  * Tracks variable reads, writes, and movements across COBOL paragraphs.
  * Supports MOVE, ADD, COMPUTE, READ, WRITE, INSPECT, and other statements.
  */
-public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
-
-    public static class MovementRecord {
-        private final String operation;
-        private final List<String> source;
-        private final String target;
-        private final int line;
-
-        public MovementRecord(String operation, List<String> source, String target, int line) {
-            this.operation = operation;
-            this.source = source;
-            this.target = target;
-            this.line = line;
-        }
-
-        public String getOperation() { return operation; }
-        public List<String> getSource() { return source; }
-        public String getTarget() { return target; }
-        public int getLine() { return line; }
-    }
+public class VariableTrackerVisitor extends AnalysisVisitor {
 
     private final Map<String, Set<String>> paragraphReads = new LinkedHashMap<>();
     private final Map<String, Set<String>> paragraphWrites = new LinkedHashMap<>();
     private final Set<String> declaredVariables;
-    private final List<MovementRecord> movements = new ArrayList<>();
+    private final List<Movement> movements = new ArrayList<>();
     private String currentParagraph = "_MAIN";
 
     /**
@@ -78,7 +58,7 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
         if (source != null && target != null) {
             if (isDeclared(source)) paragraphReads.get(currentParagraph).add(source);
             if (isDeclared(target)) paragraphWrites.get(currentParagraph).add(target);
-            movements.add(new MovementRecord("MOVE", Collections.singletonList(source), target, ctx.getStart().getLine()));
+            movements.add(new Movement("MOVE", Movement.sources(Collections.singletonList(source)), target, ctx.getStart().getLine()));
         }
         return super.visitMoveStatement(ctx);
     }
@@ -104,7 +84,8 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
         }
 
         for (String src : sources) paragraphReads.get(currentParagraph).add(src);
-        for (String tgt : targets) movements.add(new MovementRecord("ADD", sources, tgt, ctx.getStart().getLine()));
+        String[] read = Movement.sources(sources);
+        for (String tgt : targets) movements.add(new Movement("ADD", read, tgt, ctx.getStart().getLine()));
         return super.visitAddStatement(ctx);
     }
 
@@ -114,7 +95,7 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
             String target = ctx.getChild(1).getText().toUpperCase();
             if (isDeclared(target)) {
                 paragraphWrites.get(currentParagraph).add(target);
-                movements.add(new MovementRecord("ACCEPT", new ArrayList<>(), target, ctx.getStart().getLine()));
+                movements.add(new Movement("ACCEPT", new String[0], target, ctx.getStart().getLine()));
             }
         }
         return super.visitAcceptStatement(ctx);
@@ -141,7 +122,8 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
         }
 
         for (String src : sources) paragraphReads.get(currentParagraph).add(src);
-        for (String tgt : targets) movements.add(new MovementRecord("SUBTRACT", sources, tgt, ctx.getStart().getLine()));
+        String[] read = Movement.sources(sources);
+        for (String tgt : targets) movements.add(new Movement("SUBTRACT", read, tgt, ctx.getStart().getLine()));
         return super.visitSubtractStatement(ctx);
     }
 
@@ -172,7 +154,7 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
         }
 
         if (target != null) {
-            movements.add(new MovementRecord("COMPUTE", new ArrayList<>(sources), target, ctx.getStart().getLine()));
+            movements.add(new Movement("COMPUTE", Movement.sources(new ArrayList<>(sources)), target, ctx.getStart().getLine()));
         }
         return super.visitComputeStatement(ctx);
     }
@@ -208,7 +190,8 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
         }
 
         for (String src : sources) paragraphReads.get(currentParagraph).add(src);
-        for (String tgt : targets) movements.add(new MovementRecord("MULTIPLY", sources, tgt, ctx.getStart().getLine()));
+        String[] read = Movement.sources(sources);
+        for (String tgt : targets) movements.add(new Movement("MULTIPLY", read, tgt, ctx.getStart().getLine()));
         return super.visitMultiplyStatement(ctx);
     }
 
@@ -233,7 +216,8 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
         }
 
         for (String src : sources) paragraphReads.get(currentParagraph).add(src);
-        for (String tgt : targets) movements.add(new MovementRecord("DIVIDE", sources, tgt, ctx.getStart().getLine()));
+        String[] read = Movement.sources(sources);
+        for (String tgt : targets) movements.add(new Movement("DIVIDE", read, tgt, ctx.getStart().getLine()));
         return super.visitDivideStatement(ctx);
     }
 
@@ -243,7 +227,7 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
             String var = child.getText().toUpperCase();
             if (isDeclared(var)) {
                 paragraphWrites.get(currentParagraph).add(var);
-                movements.add(new MovementRecord("INITIALIZE", Collections.emptyList(), var, ctx.getStart().getLine()));
+                movements.add(new Movement("INITIALIZE", new String[0], var, ctx.getStart().getLine()));
             }
         }
         return super.visitInitializeStatement(ctx);
@@ -277,7 +261,7 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
         }
 
         if (target != null) {
-            movements.add(new MovementRecord("STRING", sources, target, ctx.getStart().getLine()));
+            movements.add(new Movement("STRING", Movement.sources(sources), target, ctx.getStart().getLine()));
         }
         return super.visitStringStatement(ctx);
     }
@@ -310,7 +294,7 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
         }
 
         for (String tgt : targets) {
-            movements.add(new MovementRecord("UNSTRING", Collections.singletonList(source), tgt, ctx.getStart().getLine()));
+            movements.add(new Movement("UNSTRING", Movement.sources(Collections.singletonList(source)), tgt, ctx.getStart().getLine()));
         }
         return super.visitUnstringStatement(ctx);
     }
@@ -321,7 +305,7 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
             String fileVar = ctx.fileName().getText().toUpperCase();
             if (isDeclared(fileVar)) {
                 paragraphReads.get(currentParagraph).add(fileVar);
-                movements.add(new MovementRecord("READ", Collections.emptyList(), fileVar, ctx.getStart().getLine()));
+                movements.add(new Movement("READ", new String[0], fileVar, ctx.getStart().getLine()));
             }
         }
         return super.visitReadStatement(ctx);
@@ -333,7 +317,7 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
             String recordVar = ctx.recordName().getText().toUpperCase();
             if (isDeclared(recordVar)) {
                 paragraphWrites.get(currentParagraph).add(recordVar);
-                movements.add(new MovementRecord("WRITE", Collections.singletonList(recordVar), null, ctx.getStart().getLine()));
+                movements.add(new Movement("WRITE", Movement.sources(Collections.singletonList(recordVar)), null, ctx.getStart().getLine()));
             }
         }
         return super.visitWriteStatement(ctx);
@@ -350,7 +334,7 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
             }
         }
         if (!sources.isEmpty()) {
-            movements.add(new MovementRecord("INSPECT", sources, null, ctx.getStart().getLine()));
+            movements.add(new Movement("INSPECT", Movement.sources(sources), null, ctx.getStart().getLine()));
         }
         return super.visitInspectStatement(ctx);
     }
@@ -363,7 +347,7 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
                 paragraphReads.get(currentParagraph).add(var);
                 String targetProgram = ctx.literal() != null ? ctx.literal().getText().replaceAll("[\"']", "").toUpperCase() :
                         (ctx.identifier() != null ? ctx.identifier().getText().toUpperCase() : "PROGRAM");
-                movements.add(new MovementRecord("CALL", Collections.singletonList(var), targetProgram, ctx.getStart().getLine()));
+                movements.add(new Movement("CALL", Movement.sources(Collections.singletonList(var)), targetProgram, ctx.getStart().getLine()));
             }
         }
         return super.visitCallStatement(ctx);
@@ -380,7 +364,7 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
      */
     public String getDataFlowMermaid() {
         StringBuilder sb = new StringBuilder("graph TD\n");
-        for (MovementRecord m : movements) {
+        for (Movement m : movements) {
             String target = m.getTarget() != null ? m.getTarget() : "EXTERNAL";
             for (String src : m.getSource()) {
                 sb.append("  ").append(src).append(" -->|").append(m.getOperation()).append("| ").append(target).append("\n");
@@ -412,20 +396,7 @@ public class VariableTrackerVisitor extends Cobol85BaseVisitor<Void> {
 
     public Map<String, Set<String>> getReadMap() { return paragraphReads; }
     public Map<String, Set<String>> getWriteMap() { return paragraphWrites; }
-    public List<MovementRecord> getMovements() { return movements; }
-
-    public JSONArray getMovementJson() {
-        JSONArray arr = new JSONArray();
-        for (MovementRecord m : movements) {
-            JSONObject obj = new JSONObject();
-            obj.put("operation", m.getOperation());
-            obj.put("source", new JSONArray() {{ addAll(m.getSource()); }});
-            obj.put("target", m.getTarget());
-            obj.put("line", m.getLine());
-            arr.add(obj);
-        }
-        return arr;
-    }
+    public List<Movement> getMovements() { return movements; }
 
     public JSONObject getJsonUsage() {
         JSONObject root = new JSONObject();
@@ -0,0 +1,31 @@
+package cobol;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the worker threads of the batch stages. This is the Java 8 version, which only has
+ * platform threads; the multi-release jar carries a Java 21 version under
+ * {@code META-INF/versions/21} that adds virtual threads.
+ */
+public class WorkerThreads {
+
+    /**
+     * Checks whether this runtime can create virtual threads.
+     * @return false on this version
+     */
+    public static boolean virtualAvailable() {
+        return false;
+    }
+
+    /**
+     * Creates a thread factory for a stage.
+     * @param name Prefix of the thread names
+     * @param virtual Whether virtual threads are wanted; ignored on this version
+     * @return Factory of threads named {@code name-1}, {@code name-2}, ...
+     */
+    public static ThreadFactory factory(String name, boolean virtual) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> new Thread(r, name + "-" + count.incrementAndGet());
+    }
+}
@@ -1,17 +1,13 @@
 package cobol;
 
-import cobol.antlr.Cobol85BaseVisitor;
 import cobol.antlr.Cobol85Parser;
 import org.antlr.v4.runtime.tree.ParseTree;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 
 import java.util.*;
 
-public class WorkingStorageVisitor extends Cobol85BaseVisitor<Void> {
+public class WorkingStorageVisitor extends AnalysisVisitor {
 
-    private final Set<String> declaredVariables = new LinkedHashSet<String>();
-    private final Map<String, String> workingStorageMap = new LinkedHashMap<String,String>();
+    private final Map<String, DataItem> dataItems = new LinkedHashMap<String, DataItem>();
 
     @Override
     public Void visitDataDescriptionEntryFormat1(Cobol85Parser.DataDescriptionEntryFormat1Context ctx) {
@@ -32,8 +28,8 @@ public class WorkingStorageVisitor extends Cobol85BaseVisitor<Void> {
         }
 
         if (varName != null) {
-            declaredVariables.add(varName);
-            workingStorageMap.put(varName, definition.toString().trim().replaceAll("\\s+", " "));
+            DataItem item = new DataItem(varName, null, null, definition.toString().trim().replaceAll("\\s+", " "));
+            dataItems.put(item.getName(), item);
         }
         return super.visitDataDescriptionEntryFormat1(ctx);
     }
@@ -43,26 +39,21 @@ public class WorkingStorageVisitor extends Cobol85BaseVisitor<Void> {
         return null;
     }
 
+    /**
+     * Gets the declared variable names in declaration order. The set is a live view, so a
+     * visitor can be handed it before the declarations have been visited.
+     * @return The declared variable names
+     */
     public Set<String> getDeclaredVariables() {
-        return declaredVariables;
+        return dataItems.keySet();
     }
 
-    public Map<String, String> getWorkingStorageMap() {
-        return workingStorageMap;
-    }
-
-    public JSONObject getWorkingStorageJson() {
-        JSONObject root = new JSONObject();
-        JSONArray vars = new JSONArray();
-        JSONObject dict = new JSONObject();
-
-        for (String var : declaredVariables) {
-            vars.add(var);
-            dict.put(var, workingStorageMap.getOrDefault(var, ""));
-        }
-
-        root.put("variables", vars);
-        root.put("dictionary", dict);
-        return root;
+    /**
+     * Gets the declared items by name, in declaration order; a redeclared name keeps its first
+     * position and takes the later definition.
+     * @return The working-storage items
+     */
+    public Map<String, DataItem> getDataItems() {
+        return dataItems;
     }
 }
@@ -0,0 +1,31 @@
+package cobol;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the worker threads of the batch stages. Java 21 version, selected from the
+ * multi-release jar; stages that block on I/O can run on virtual threads, which cost little
+ * enough that an I/O stage can keep hundreds of reads in flight.
+ */
+public class WorkerThreads {
+
+    /**
+     * Checks whether this runtime can create virtual threads.
+     * @return true on this version
+     */
+    public static boolean virtualAvailable() {
+        return true;
+    }
+
+    /**
+     * Creates a thread factory for a stage.
+     * @param name Prefix of the thread names
+     * @param virtual Whether to create virtual threads
+     * @return Factory of threads named {@code name-1}, {@code name-2}, ...
+     */
+    public static ThreadFactory factory(String name, boolean virtual) {
+        return virtual
+                ? Thread.ofVirtual().name(name + "-", 1).factory()
+                : Thread.ofPlatform().name(name + "-", 1).factory();
+    }
+}